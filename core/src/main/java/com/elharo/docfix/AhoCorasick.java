@@ -0,0 +1,125 @@
+package com.elharo.docfix;
+
+import java.util.Arrays;
+
+/**
+ * Aho-Corasick automaton that searches a byte buffer for many byte patterns at once.
+ * Each pattern carries a label bit, and a scan reports the union of the labels
+ * of every pattern found in the input.
+ *
+ * <p>The automaton is compiled into a dense transition table whose columns are
+ * the equivalence classes of the bytes that occur in some pattern. All other bytes
+ * share a single class that always leads back to the root. A scan therefore
+ * costs one table lookup per input byte regardless of the number of patterns.
+ */
+final class AhoCorasick {
+
+  // Maps each unsigned byte value to its column in the transition table
+  private final int[] byteClasses = new int[256];
+  private final int classCount;
+  // Indexed by state * classCount + byte class
+  private final int[] transitions;
+  // Union of the labels of the patterns that end in each state
+  private final int[] outputs;
+
+  /**
+   * Compiles an automaton for the given patterns.
+   *
+   * @param patterns the byte sequences to search for; none may be empty
+   * @param labels the label bits reported for each pattern, parallel to patterns
+   */
+  AhoCorasick(byte[][] patterns, int[] labels) {
+    if (patterns.length != labels.length) {
+      throw new IllegalArgumentException("Each pattern needs exactly one label");
+    }
+
+    int classes = 1; // class 0 is every byte that does not occur in a pattern
+    int maxStates = 1;
+    for (byte[] pattern : patterns) {
+      if (pattern.length == 0) {
+        throw new IllegalArgumentException("Patterns must not be empty");
+      }
+      maxStates += pattern.length;
+      for (byte b : pattern) {
+        if (byteClasses[b & 0xFF] == 0) {
+          byteClasses[b & 0xFF] = classes++;
+        }
+      }
+    }
+    this.classCount = classes;
+
+    // Build the trie. -1 marks a missing edge.
+    int[] table = new int[maxStates * classCount];
+    Arrays.fill(table, -1);
+    int[] out = new int[maxStates];
+    int stateCount = 1;
+    for (int p = 0; p < patterns.length; p++) {
+      int state = 0;
+      for (byte b : patterns[p]) {
+        int index = state * classCount + byteClasses[b & 0xFF];
+        if (table[index] == -1) {
+          table[index] = stateCount++;
+        }
+        state = table[index];
+      }
+      out[state] |= labels[p];
+    }
+
+    // Breadth first traversal computes the failure links and turns the trie
+    // into a complete DFA by replacing each missing edge with the edge taken
+    // from the failure state.
+    int[] failure = new int[stateCount];
+    int[] queue = new int[stateCount];
+    int head = 0;
+    int tail = 0;
+    for (int c = 0; c < classCount; c++) {
+      int child = table[c];
+      if (child == -1) {
+        table[c] = 0;
+      } else {
+        failure[child] = 0;
+        queue[tail++] = child;
+      }
+    }
+    while (head < tail) {
+      int state = queue[head++];
+      out[state] |= out[failure[state]];
+      for (int c = 0; c < classCount; c++) {
+        int index = state * classCount + c;
+        int child = table[index];
+        int fallback = table[failure[state] * classCount + c];
+        if (child == -1) {
+          table[index] = fallback;
+        } else {
+          failure[child] = fallback;
+          queue[tail++] = child;
+        }
+      }
+    }
+
+    this.transitions = Arrays.copyOf(table, stateCount * classCount);
+    this.outputs = Arrays.copyOf(out, stateCount);
+  }
+
+  /**
+   * Scans the buffer and returns the union of the labels of all patterns found.
+   * The scan stops early as soon as any label in stopLabels has been found.
+   *
+   * @param buffer the bytes to search
+   * @param length the number of valid bytes in the buffer
+   * @param stopLabels labels that end the scan as soon as one is found, or 0 to scan everything
+   * @return the union of the labels of the patterns that occur in the buffer
+   */
+  int scan(byte[] buffer, int length, int stopLabels) {
+    int state = 0;
+    int found = 0;
+    for (int i = 0; i < length; i++) {
+      state = transitions[state * classCount + byteClasses[buffer[i] & 0xFF]];
+      found |= outputs[state];
+      if ((found & stopLabels) != 0) {
+        break;
+      }
+    }
+    return found;
+  }
+}
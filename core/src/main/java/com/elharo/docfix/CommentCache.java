@@ -0,0 +1,128 @@
+package com.elharo.docfix;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers the fixed form of raw Javadoc comments. Code bases repeat the same
+ * comments many times, such as license headers, {@code /** Serial version UID. *}{@code /},
+ * and generated getter documentation, so a repeated comment costs one hash lookup
+ * instead of a parse. The table is shared by all files and threads.
+ *
+ * <p>Comments are keyed with their indentation factored out, so the same comment
+ * on a field and on a nested class's field shares an entry. That is only done when
+ * the indentation is plain spaces that every line of the comment starts with and that
+ * the fixed comment would use as well, since block tag continuation lines are copied
+ * with their raw indentation. Other comments are parsed every time.
+ *
+ * <p>When the table fills up it is cleared. Comments that really are repeated
+ * many times are back in the table almost immediately.
+ */
+final class CommentCache {
+
+  private static final int MAX_ENTRIES = 4096;
+  // Longer comments are rarely repeated and would take too much memory
+  private static final int MAX_LENGTH = 8192;
+
+  private static final Map<String, String> FIXED = new ConcurrentHashMap<>();
+
+  private CommentCache() {
+  }
+
+  /**
+   * Fixes a raw Javadoc comment, reusing the result for an identical comment if there is one.
+   *
+   * @param raw the comment including its leading indentation
+   * @param lineEnding the line ending that separates the lines of the comment
+   * @param indentation how tabs are measured and how the fixed comment is indented
+   * @return the fixed comment with \n line endings, or the empty string if the comment is removed
+   */
+  static String fix(String raw, String lineEnding, Indentation indentation) {
+    int indent = indentOf(raw);
+    String prefix = raw.substring(0, indent);
+    String body = raw.length() > MAX_LENGTH ? null : deindent(raw, lineEnding, prefix, indentation);
+    if (body == null) {
+      return DocComment.parse(null, raw, indentation).toJava();
+    }
+
+    String key = indentation.tabWidth + (indentation.useTabs ? "t:" : "s:") + body;
+    String fixed = FIXED.get(key);
+    if (fixed == null) {
+      fixed = DocComment.parse(null, body, indentation).toJava();
+      if (FIXED.size() >= MAX_ENTRIES) {
+        FIXED.clear();
+      }
+      FIXED.put(key, fixed);
+    }
+    return indent == 0 ? fixed : reindent(fixed, prefix);
+  }
+
+  /**
+   * Removes the indentation of the first line from every line of a comment
+   * and normalizes the line endings to \n.
+   *
+   * @return the comment without its indentation, or null if the indentation
+   *     cannot be factored out
+   */
+  private static String deindent(String raw, String lineEnding, String prefix,
+      Indentation indentation) {
+    if (prefix.length() < raw.length() && raw.charAt(prefix.length()) == '\t') {
+      return null; // tabs are measured, so the indentation is not a plain prefix
+    }
+    if (!indentation.whitespace(prefix.length()).equals(prefix)) {
+      return null; // the fixed comment would be indented differently
+    }
+
+    StringBuilder body = new StringBuilder(raw.length());
+    int start = 0;
+    while (true) {
+      if (!raw.startsWith(prefix, start)) {
+        return null;
+      }
+      int end = raw.indexOf(lineEnding, start);
+      if (end == -1) {
+        return body.append(raw, start + prefix.length(), raw.length()).toString();
+      }
+      body.append(raw, start + prefix.length(), end).append('\n');
+      start = end + lineEnding.length();
+    }
+  }
+
+  private static int indentOf(String raw) {
+    int indent = 0;
+    while (indent < raw.length() && raw.charAt(indent) == ' ') {
+      indent++;
+    }
+    return indent;
+  }
+
+  /**
+   * Puts the indentation back in front of every line of a fixed comment.
+   */
+  private static String reindent(String fixed, String indent) {
+    if (fixed.isEmpty()) {
+      return fixed;
+    }
+    StringBuilder sb = new StringBuilder(fixed.length() + 8 * indent.length());
+    int start = 0;
+    while (true) {
+      sb.append(indent);
+      int end = fixed.indexOf('\n', start);
+      if (end == -1) {
+        return sb.append(fixed, start, fixed.length()).toString();
+      }
+      sb.append(fixed, start, end + 1);
+      start = end + 1;
+    }
+  }
+
+  // visible for testing
+  static void clear() {
+    FIXED.clear();
+  }
+
+  // visible for testing
+  static int size() {
+    return FIXED.size();
+  }
+}
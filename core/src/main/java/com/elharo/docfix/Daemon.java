@@ -0,0 +1,274 @@
+package com.elharo.docfix;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.EnumSet;
+import java.util.Properties;
+
+/**
+ * A resident DocFix process that runs command lines sent by {@link DaemonClient},
+ * so each request skips JVM startup and runs already JIT-compiled code.
+ *
+ * <p>The daemon listens on an ephemeral port on the loopback interface and
+ * records the port and a random token in a state file readable only by its
+ * owner. A client must present the token, so other local users cannot drive
+ * the daemon. Requests are served one at a time because they share
+ * {@code System.out} and {@code System.err}, which are redirected to the
+ * client for the duration of a request.
+ *
+ * <p>A request is the token, the client's working directory, and the arguments.
+ * The response is a sequence of frames, each a channel byte followed by a
+ * length and that many bytes of output, ending with an exit frame that carries
+ * the exit status.
+ */
+final class Daemon implements Closeable {
+
+  static final String STATE_FILE = "daemon.properties";
+  static final String STOP = "--stop-daemon";
+
+  static final int STDOUT = 1;
+  static final int STDERR = 2;
+  static final int EXIT = 3;
+
+  private static final int MAX_ARGUMENTS = 10_000;
+  private static final int REQUEST_TIMEOUT_MILLIS = 30_000;
+
+  private final Path stateFile;
+  private final ServerSocket server;
+  private final String token;
+  // Kept warm between requests, which are served one at a time
+  private final FixContext context = new FixContext(1);
+  private volatile boolean stopped;
+
+  /**
+   * Opens the server socket and publishes its port and token in the state file.
+   *
+   * @param directory the directory that holds the state file
+   * @throws IOException if the socket cannot be opened or the state file written
+   */
+  Daemon(Path directory) throws IOException {
+    Files.createDirectories(directory);
+    this.server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+    byte[] secret = new byte[16];
+    new SecureRandom().nextBytes(secret);
+    StringBuilder hex = new StringBuilder();
+    for (byte b : secret) {
+      hex.append(String.format("%02x", b));
+    }
+    this.token = hex.toString();
+    this.stateFile = directory.resolve(STATE_FILE);
+    writeState(directory);
+  }
+
+  /**
+   * Returns the directory holding the state file of the current user's daemon.
+   *
+   * @return ~/.docfix
+   */
+  static Path defaultDirectory() {
+    return Paths.get(System.getProperty("user.home"), ".docfix");
+  }
+
+  /**
+   * Returns the port the daemon listens on.
+   *
+   * @return the port
+   */
+  int port() {
+    return server.getLocalPort();
+  }
+
+  private void writeState(Path directory) throws IOException {
+    Properties state = new Properties();
+    state.setProperty("port", Integer.toString(port()));
+    state.setProperty("token", token);
+    Path temp;
+    if (directory.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+      temp = Files.createTempFile(directory, STATE_FILE, ".tmp", PosixFilePermissions.asFileAttribute(
+          EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE)));
+    } else {
+      temp = Files.createTempFile(directory, STATE_FILE, ".tmp");
+    }
+    try {
+      try (OutputStream out = Files.newOutputStream(temp)) {
+        state.store(out, "DocFix daemon");
+      }
+      Files.move(temp, stateFile, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  /**
+   * Serves requests until a client asks the daemon to stop or it is closed.
+   *
+   * @throws IOException if the server socket fails
+   */
+  void serve() throws IOException {
+    while (!stopped) {
+      Socket socket;
+      try {
+        socket = server.accept();
+      } catch (SocketException ex) {
+        if (stopped) {
+          return;
+        }
+        throw ex;
+      }
+      try (Socket s = socket) {
+        handle(s);
+      } catch (IOException ex) {
+        System.err.println("Daemon request failed: " + ex.getMessage());
+      }
+    }
+  }
+
+  private void handle(Socket socket) throws IOException {
+    // Don't let a client that never finishes its request block everyone else
+    socket.setSoTimeout(REQUEST_TIMEOUT_MILLIS);
+    DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+    byte[] presented = in.readUTF().getBytes(StandardCharsets.UTF_8);
+    if (!MessageDigest.isEqual(presented, token.getBytes(StandardCharsets.UTF_8))) {
+      respond(out, "Error: the daemon rejected the client's token", 1);
+      return;
+    }
+    Path workingDirectory = Paths.get(in.readUTF());
+    int count = in.readInt();
+    if (count < 0 || count > MAX_ARGUMENTS) {
+      respond(out, "Error: too many arguments", 1);
+      return;
+    }
+    String[] args = new String[count];
+    for (int i = 0; i < count; i++) {
+      args[i] = in.readUTF();
+    }
+    socket.setSoTimeout(0);
+
+    if (args.length == 1 && STOP.equals(args[0])) {
+      respond(out, null, 0);
+      close();
+      return;
+    }
+    for (String arg : args) {
+      if ("--watch".equals(arg) || "--daemon".equals(arg)) {
+        respond(out, "Error: " + arg + " cannot be run through the daemon", 1);
+        return;
+      }
+    }
+
+    PrintStream stdout = new PrintStream(new FrameOutputStream(out, STDOUT), true, StandardCharsets.UTF_8);
+    PrintStream stderr = new PrintStream(new FrameOutputStream(out, STDERR), true, StandardCharsets.UTF_8);
+    PrintStream oldOut = System.out;
+    PrintStream oldErr = System.err;
+    String error = null;
+    int status;
+    System.setOut(stdout);
+    System.setErr(stderr);
+    try {
+      context.editorConfig().revalidate();
+      status = DocFix.run(args, workingDirectory, context);
+    } catch (RuntimeException ex) {
+      // A bug hit by one request must not take down the daemon for every later one
+      error = "Error: " + ex;
+      status = 1;
+    } finally {
+      System.setOut(oldOut);
+      System.setErr(oldErr);
+      stdout.flush();
+      stderr.flush();
+    }
+    respond(out, error, status);
+  }
+
+  private static void respond(DataOutputStream out, String error, int status) throws IOException {
+    if (error != null) {
+      byte[] bytes = (error + System.lineSeparator()).getBytes(StandardCharsets.UTF_8);
+      out.writeByte(STDERR);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+    out.writeByte(EXIT);
+    out.writeInt(status);
+    out.flush();
+  }
+
+  /**
+   * Stops serving and removes the state file, unless another daemon started
+   * since has replaced it with its own.
+   *
+   * @throws IOException if the state file cannot be deleted
+   */
+  @Override
+  public void close() throws IOException {
+    stopped = true;
+    server.close();
+    Properties state = new Properties();
+    try (InputStream in = Files.newInputStream(stateFile)) {
+      state.load(in);
+    } catch (NoSuchFileException ex) {
+      return;
+    }
+    if (token.equals(state.getProperty("token"))) {
+      Files.deleteIfExists(stateFile);
+    }
+  }
+
+  /**
+   * Sends everything written to it to the client as frames on one channel.
+   */
+  private static final class FrameOutputStream extends OutputStream {
+
+    private final DataOutputStream out;
+    private final int channel;
+
+    FrameOutputStream(DataOutputStream out, int channel) {
+      this.out = out;
+      this.channel = channel;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      synchronized (out) {
+        out.writeByte(channel);
+        out.writeInt(len);
+        out.write(b, off, len);
+      }
+    }
+
+    @Override
+    public void flush() throws IOException {
+      synchronized (out) {
+        out.flush();
+      }
+    }
+  }
+}
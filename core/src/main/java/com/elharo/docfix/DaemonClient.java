@@ -0,0 +1,147 @@
+package com.elharo.docfix;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+
+/**
+ * Thin command line client that forwards its arguments to a running DocFix daemon
+ * and streams the output back, avoiding JVM warm-up on every invocation.
+ * If no daemon is running, the command runs in this process instead.
+ *
+ * <p>Start the daemon with {@code java -jar docfix-cli.jar --daemon}, run
+ * {@code java -cp docfix-cli.jar com.elharo.docfix.DaemonClient [arguments]}
+ * for each request, and stop the daemon with the single argument --stop-daemon.
+ */
+public final class DaemonClient {
+
+  /**
+   * Private constructor to prevent instantiation of this utility class.
+   */
+  private DaemonClient() {
+  }
+
+  /**
+   * Forwards the arguments to the daemon and exits with the status it reports.
+   *
+   * @param args the same arguments {@link DocFix#main(String[])} accepts
+   */
+  public static void main(String[] args) {
+    Path workingDirectory = Paths.get("").toAbsolutePath();
+    Properties state = readState(Daemon.defaultDirectory());
+    int status;
+    try (Socket socket = connect(state)) {
+      if (socket == null) {
+        if (args.length == 1 && Daemon.STOP.equals(args[0])) {
+          System.err.println("No DocFix daemon is running");
+          return;
+        }
+        status = DocFix.run(args, workingDirectory);
+      } else {
+        String token = state.getProperty("token", "");
+        status = send(socket, token, workingDirectory, args, System.out, System.err);
+      }
+    } catch (IOException ex) {
+      System.err.println("Error talking to the DocFix daemon: " + ex.getMessage());
+      status = 1;
+    }
+    System.out.flush();
+    if (status != 0) {
+      System.exit(status);
+    }
+  }
+
+  /**
+   * Connects to the daemon described by a state file.
+   *
+   * @param state the contents of the daemon's state file, or null if there is none
+   * @return the connected socket, or null if no daemon is running
+   */
+  static Socket connect(Properties state) {
+    if (state == null) {
+      return null;
+    }
+    try {
+      int port = Integer.parseInt(state.getProperty("port", ""));
+      return new Socket(InetAddress.getLoopbackAddress(), port);
+    } catch (NumberFormatException | IOException ex) {
+      // A stale state file left behind by a daemon that died
+      return null;
+    }
+  }
+
+  /**
+   * Reads the port and token that a daemon published in its state file.
+   *
+   * @param directory the directory holding the daemon's state file
+   * @return the state, or null if no daemon has published one
+   */
+  static Properties readState(Path directory) {
+    Path stateFile = directory.resolve(Daemon.STATE_FILE);
+    if (!Files.isRegularFile(stateFile)) {
+      return null;
+    }
+    Properties state = new Properties();
+    try (InputStream in = Files.newInputStream(stateFile)) {
+      state.load(in);
+      return state;
+    } catch (IOException ex) {
+      return null;
+    }
+  }
+
+  /**
+   * Sends one request over a connected socket and copies the output to the given streams.
+   *
+   * @param socket the connection to the daemon
+   * @param token the secret the daemon published in its state file
+   * @param workingDirectory the directory that relative paths are resolved against
+   * @param args the command line arguments
+   * @param out receives the command's standard output
+   * @param err receives the command's standard error
+   * @return the exit status of the command
+   * @throws IOException if the connection fails
+   */
+  static int send(Socket socket, String token, Path workingDirectory, String[] args,
+      OutputStream out, OutputStream err) throws IOException {
+    DataOutputStream request =
+        new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    request.writeUTF(token);
+    request.writeUTF(workingDirectory.toAbsolutePath().toString());
+    request.writeInt(args.length);
+    for (String arg : args) {
+      request.writeUTF(arg);
+    }
+    request.flush();
+
+    DataInputStream response = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+    byte[] buffer = new byte[8192];
+    while (true) {
+      int channel = response.readByte();
+      if (channel == Daemon.EXIT) {
+        return response.readInt();
+      }
+      int length = response.readInt();
+      if ((channel != Daemon.STDOUT && channel != Daemon.STDERR) || length < 0) {
+        throw new IOException("Malformed response from the daemon");
+      }
+      if (buffer.length < length) {
+        buffer = new byte[length];
+      }
+      response.readFully(buffer, 0, length);
+      OutputStream target = channel == Daemon.STDERR ? err : out;
+      target.write(buffer, 0, length);
+      target.flush();
+    }
+  }
+}
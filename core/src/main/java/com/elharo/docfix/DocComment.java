@@ -22,7 +22,7 @@ class DocComment {
   // Indentation to be applied before each line of the comment
   protected final String indent;
 
-  protected DocComment(Kind kind, String description, List<BlockTag> blockTags, int indent) {
+  protected DocComment(Kind kind, String description, List<BlockTag> blockTags, String indent) {
     this.kind = kind;
     if (description != null && !description.isBlank()) {
       // Only capitalize if description doesn't start with a special identifier
@@ -41,7 +41,7 @@ class DocComment {
     }
     this.description = description;
     this.blockTags = sortTags(blockTags);
-    this.indent = " ".repeat(indent);
+    this.indent = indent;
   }
 
   private final static Map<String, Integer> tagOrder = new HashMap<>();
@@ -155,11 +155,23 @@ class DocComment {
   }
 
   static DocComment parse(Kind kind, String raw) {
+    return parse(kind, raw, Indentation.DEFAULT);
+  }
+
+  /**
+   * Parses a raw Javadoc comment.
+   *
+   * @param kind the kind of declaration the comment documents, or null if unknown
+   * @param raw the comment including its leading indentation
+   * @param indentation how tabs are measured and how the fixed comment is indented
+   * @return the parsed comment
+   */
+  static DocComment parse(Kind kind, String raw, Indentation indentation) {
     String lineEnding = Strings.detectLineEnding(raw);
     raw = raw.replace(lineEnding, "\n"); // Normalize line endings
 
-    int tagIndent = Strings.findIndent(raw);
-    int postAsteriskIndent = findPostAsteriskIndent(raw);
+    String tagIndent = indentation.whitespace(indentation.measure(raw));
+    int postAsteriskIndent = findPostAsteriskIndent(raw, indentation.tabWidth);
 
     // Remove leading/trailing comment markers and split into lines
     String body = raw.trim();
@@ -230,6 +242,10 @@ class DocComment {
 
   // visible for testing
   static int findPostAsteriskIndent(String raw) {
+    return findPostAsteriskIndent(raw, Indentation.DEFAULT.tabWidth);
+  }
+
+  private static int findPostAsteriskIndent(String raw, int tabWidth) {
     String[] lines = raw.split("\n");
     int minSpaces = -1;
     // ignore first line after /**
@@ -239,7 +255,7 @@ class DocComment {
         break; // Stop at first block tag
       }
       if (line.startsWith("*") && !line.endsWith("*/") && !"*".equals(line)) {
-        int lineIndent = Strings.findIndent(line.substring(1));
+        int lineIndent = Strings.findIndent(line.substring(1), tabWidth);
         if (minSpaces == -1 || lineIndent < minSpaces) {
           minSpaces = lineIndent;
         }
@@ -1,14 +1,33 @@
 package com.elharo.docfix;
 
 import java.io.IOException;
-import java.io.Writer;
+import java.io.InputStream;
 import java.nio.charset.Charset;
 import java.nio.charset.IllegalCharsetNameException;
 import java.nio.charset.UnsupportedCharsetException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.regex.Pattern;
 
 /**
  * Utility class for fixing Javadoc comments to conform to Oracle Javadoc guidelines.
@@ -19,6 +38,8 @@ import java.util.List;
  */
 public final class DocFix {
 
+  private static final Pattern LINE_BREAK = Pattern.compile("\\R");
+
   /**
    * Private constructor to prevent instantiation of this utility class.
    */
@@ -34,11 +55,23 @@ public final class DocFix {
    */
   public static String fix(String code) {
     String lineEnding = Strings.detectLineEnding(code);
-    String[] lines = code.split("\\R");
-    List<String> fixedLines = FileParser.parseLines(lines, lineEnding);
+    List<String> fixedLines = fixLines(code, lineEnding, Indentation.DEFAULT);
     return String.join(lineEnding, fixedLines);
   }
 
+  /**
+   * Splits the code into lines and fixes the Javadoc comments among them.
+   *
+   * @param code the source code containing Javadoc comments
+   * @param lineEnding the line ending used in the code
+   * @param indentation how tabs are measured and how fixed comments are indented
+   * @return the fixed lines without line endings
+   */
+  static List<String> fixLines(CharSequence code, String lineEnding, Indentation indentation) {
+    String[] lines = LINE_BREAK.split(code);
+    return FileParser.parseLines(lines, lineEnding, indentation);
+  }
+
   /**
    * Fixes Javadoc comments in the provided Java source file so that the first letter
    * of each doc comment is lower case. The file is modified in place.
@@ -52,25 +85,16 @@ public final class DocFix {
 
   /**
    * Fixes Javadoc comments in the provided Java source file according to Oracle Javadoc guidelines.
-   * The file is modified in place.
+   * The file is modified in place, and only if a comment changes.
    *
    * @param file the path to the Java source file
-   * @param encoding the character encoding to use, or null to auto-detect
+   * @param encoding the character encoding to use, or null to use the charset declared
+   *     in .editorconfig or else auto-detect
    * @throws IOException if an I/O error occurs
    */
   public static void fix(Path file, Charset encoding) throws IOException {
-    if (encoding == null) {
-      encoding = EncodingDetector.detectEncoding(file);
-    }
-    String code = Files.readString(file, encoding);
-    String lineEnding = Strings.detectLineEnding(code);
-    String[] rawLines = code.split("\\R");
-    List<String> fixedLines = FileParser.parseLines(rawLines, lineEnding);
-    try (Writer writer = Files.newBufferedWriter(file, encoding)) {
-      for (String line : fixedLines) {
-        writer.write(line);
-        writer.write(lineEnding);
-      }
+    try (FixSession session = new FixSession(new FixOptions().setEncoding(encoding))) {
+      session.fix(file, file);
     }
   }
 
@@ -80,129 +104,629 @@ public final class DocFix {
    *
    * @param path the directory to scan for Java source files
    * @param dryrun if true only prints what would be changed without actually changning any files
-   * @param encoding the character encoding to use, or null to auto-detect
+   * @param encoding the character encoding to use, or null to use the charset declared
+   *     in .editorconfig or else auto-detect
    * @throws IOException if an I/O error occurs
    */
   public static void fixDirectory(Path path, boolean dryrun, Charset encoding) throws IOException {
-    Files.walk(path, 63)
-        .filter(p -> !Files.isSymbolicLink(p))
-        .filter(p -> Files.isRegularFile(p) && p.toString().endsWith(".java"))
-        .forEach(p -> {
-          try {
-            if (dryrun) {
-              Charset charset = encoding != null ? encoding : EncodingDetector.detectEncoding(p);
-              String original = Files.readString(p, charset);
-              String fixed = fix(original);
-              if (!original.equals(fixed)) {
-                Path cwd = Paths.get("").toAbsolutePath();
-                Path relPath = cwd.relativize(p.toAbsolutePath());
-                System.out.println(relPath);
-                printChangedLines(original, fixed);
-              }
-            } else {
-              fix(p, encoding);
+    fixDirectory(path, new FixOptions().setDryrun(dryrun).setEncoding(encoding));
+  }
+
+  /**
+   * Fixes Javadoc comments in Java files in the provided directory according to Oracle Javadoc guidelines.
+   * Files are modified in place, and only if a comment changes. The directory may
+   * belong to any file system, such as the zip file system of an archive.
+   *
+   * @param path the directory to scan for Java source files
+   * @param options the settings for the run
+   * @throws IOException if an I/O error occurs
+   */
+  public static void fixDirectory(Path path, FixOptions options) throws IOException {
+    try (FixSession session = new FixSession(options)) {
+      fixDirectory(path, session, options);
+    }
+  }
+
+  /**
+   * Fixes Javadoc comments in Java files in several directories, such as all the
+   * source roots of a project, in one run that shares its caches and threads.
+   * A directory that is nested in another one, or listed twice, is processed only once.
+   *
+   * @param directories the directories to scan for Java source files
+   * @param options the settings for the run
+   * @return the files that changed, or would have in dry run or check mode
+   * @throws IOException if an I/O error occurs
+   */
+  public static List<Path> fixDirectories(Collection<Path> directories, FixOptions options)
+      throws IOException {
+    FixJob job = new FixJob(directories, options);
+    fixAll(Collections.singletonList(job));
+    return job.getChangedFiles();
+  }
+
+  /**
+   * Fixes Javadoc comments in the Java files of a zip or jar archive, such as a
+   * sources jar, without extracting it. The archive is opened as a zip file system,
+   * so when it is written back only the entries that changed are compressed again,
+   * and the others are copied as their stored bytes. In dry run or check mode
+   * nothing is written.
+   *
+   * @param archive the archive to fix
+   * @param output the file to write the fixed archive to, or null to fix the archive in place
+   * @param options the settings for the run, which cannot include an output directory,
+   *     staged files, or a git ref
+   * @return the names of the entries that changed, or would have in dry run or check mode
+   * @throws IOException if the archive cannot be read or written
+   * @throws IllegalArgumentException if the options use git or an output directory
+   */
+  public static List<String> fixArchive(Path archive, Path output, FixOptions options)
+      throws IOException {
+    if (options.isStaged() || options.getSince() != null || options.getOutputDirectory() != null) {
+      throw new IllegalArgumentException(
+          "An archive cannot be fixed with staged files, a git ref, or an output directory");
+    }
+    Path target = archive;
+    if (output != null && !options.isDryrun() && !options.isCheck()
+        && !(Files.exists(output) && Files.isSameFile(archive, output))) {
+      // The copy is made by the file system; the zip file system then rewrites only what changed
+      Files.copy(archive, output, StandardCopyOption.REPLACE_EXISTING);
+      target = output;
+    }
+    List<String> names = new ArrayList<>();
+    try (FileSystem zip = FileSystems.newFileSystem(target, (ClassLoader) null)) {
+      for (Path entry : fixDirectories(Collections.singletonList(zip.getPath("/")), options)) {
+        names.add(entry.toString());
+      }
+    }
+    return names;
+  }
+
+  /**
+   * Checks whether a file is a zip or jar archive, judging by its name.
+   */
+  static boolean isArchive(Path path) {
+    String name = path.getFileName().toString().toLowerCase(Locale.ROOT);
+    return (name.endsWith(".jar") || name.endsWith(".zip")) && Files.isRegularFile(path);
+  }
+
+  /**
+   * Runs several jobs, such as one for each module of a build, at once. Every job
+   * has its own options and cache, but the files of all jobs are fed to the worker
+   * threads together, so a job with many files does not hold up the others.
+   * For a single pool of threads, the jobs' options should share one {@link FixContext}.
+   * Each job's results are stored in the job.
+   *
+   * @param jobs the jobs to run
+   * @throws IOException if an I/O error occurs
+   */
+  public static void fixAll(Collection<FixJob> jobs) throws IOException {
+    List<FixSession> sessions = new ArrayList<>();
+    try {
+      // Walking submits files without waiting, so workers start before the last walk ends
+      for (FixJob job : jobs) {
+        FixSession session = new FixSession(job.getOptions());
+        sessions.add(session);
+        for (Path directory : distinctRoots(job.getDirectories())) {
+          submitDirectory(directory, session, job.getOptions());
+        }
+      }
+      int i = 0;
+      for (FixJob job : jobs) {
+        FixSession session = sessions.get(i++);
+        session.awaitSubmitted();
+        session.completed();
+        job.finished(session.changedFiles(), session.statistics());
+      }
+    } finally {
+      closeAll(sessions);
+    }
+  }
+
+  private static void closeAll(List<FixSession> sessions) throws IOException {
+    IOException failure = null;
+    for (FixSession session : sessions) {
+      try {
+        session.close();
+      } catch (IOException ex) {
+        if (failure == null) {
+          failure = ex;
+        } else {
+          failure.addSuppressed(ex);
+        }
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  /**
+   * Removes the directories that are the same as, or nested in, another
+   * directory in the collection, so that walking the rest visits each file once.
+   * Directories that do not exist are dropped too.
+   *
+   * @param directories the directories, in any order
+   * @return the outermost existing directories, in their original order
+   * @throws IOException if the real path of a directory cannot be determined
+   */
+  public static List<Path> distinctRoots(Collection<Path> directories) throws IOException {
+    Map<Path, Path> real = new LinkedHashMap<>();
+    for (Path directory : directories) {
+      if (Files.isDirectory(directory)) {
+        real.putIfAbsent(directory.toRealPath(), directory);
+      }
+    }
+    List<Path> roots = new ArrayList<>();
+    for (Map.Entry<Path, Path> entry : real.entrySet()) {
+      boolean nested = false;
+      for (Path other : real.keySet()) {
+        if (!other.equals(entry.getKey()) && entry.getKey().startsWith(other)) {
+          nested = true;
+          break;
+        }
+      }
+      if (!nested) {
+        roots.add(entry.getValue());
+      }
+    }
+    return roots;
+  }
+
+  /**
+   * Fixes Javadoc comments in Java files in the provided directory, sharing
+   * caches among the files in the directory.
+   *
+   * @param path the directory to scan for Java source files
+   * @param session the configuration and caches for the run
+   * @param options the settings that choose which files are fixed
+   * @throws IOException if an I/O error occurs
+   */
+  private static void fixDirectory(Path path, FixSession session, FixOptions options)
+      throws IOException {
+    submitDirectory(path, session, options);
+    session.awaitSubmitted();
+    session.completed();
+  }
+
+  /**
+   * Submits the Java files in a directory that the options select to the session.
+   */
+  private static void submitDirectory(Path path, FixSession session, FixOptions options)
+      throws IOException {
+    Path output = session.outputDirectory();
+    if (output != null && output.equals(path.toAbsolutePath().normalize())) {
+      throw new IOException("The output directory is the source directory: " + path);
+    }
+    if (options.isStaged()) {
+      fixStaged(path, session, options.isUpdateWorkTree());
+      return;
+    }
+    if (options.getSince() != null) {
+      submitFiles(path, GitChanges.changedJavaFiles(path, options.getSince()), session);
+      return;
+    }
+
+    session.walking(path);
+    SourceFilter filter = session.filter();
+    // The attributes read by the walk let the cache skip unchanged files without reading them
+    Files.walkFileTree(path, EnumSet.noneOf(FileVisitOption.class), 63,
+        new SimpleFileVisitor<Path>() {
+          @Override
+          public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) {
+            if (session.isStopped()) {
+              return FileVisitResult.TERMINATE;
+            }
+            // Excluded subtrees are skipped before their contents are listed
+            if (!dir.equals(path) && filter.prunes(path.relativize(dir))) {
+              return FileVisitResult.SKIP_SUBTREE;
             }
-          } catch (IOException e) {
-            System.err.println("Failed to fix: " + p + ", " + e.getMessage());
+            // An output directory inside the sources is not itself a source
+            if (output != null && output.equals(dir.toAbsolutePath().normalize())) {
+              return FileVisitResult.SKIP_SUBTREE;
+            }
+            return FileVisitResult.CONTINUE;
+          }
+
+          @Override
+          public FileVisitResult visitFile(Path p, BasicFileAttributes attributes) {
+            if (session.isStopped()) {
+              return FileVisitResult.TERMINATE;
+            }
+            if (attributes.isRegularFile() && p.toString().endsWith(".java")
+                && filter.includes(path.relativize(p))) {
+              session.submit(p, path, attributes);
+            }
+            return FileVisitResult.CONTINUE;
           }
         });
   }
 
+  /**
+   * Fixes Javadoc comments in the given Java files, all of which are in one
+   * source root. Unlike {@link #fixDirectory(Path, FixOptions)} this does not
+   * walk the directory, so callers that already know which files changed
+   * pay only for those files.
+   *
+   * @param root the source root containing the files
+   * @param files the Java source files to fix
+   * @param options the settings for the run
+   * @throws IOException if the cache cannot be written
+   */
+  public static void fixFiles(Path root, Collection<Path> files, FixOptions options)
+      throws IOException {
+    fixFiles(Collections.singletonMap(root, files), options);
+  }
+
+  /**
+   * Fixes Javadoc comments in the given Java files of several source roots
+   * in one run that shares its caches and threads. A file listed under
+   * more than one root is fixed only once.
+   *
+   * @param filesByRoot the Java source files to fix, keyed by the source root containing them
+   * @param options the settings for the run
+   * @return the files that changed, or would have in dry run or check mode
+   * @throws IOException if the cache cannot be written
+   */
+  public static List<Path> fixFiles(Map<Path, ? extends Collection<Path>> filesByRoot,
+      FixOptions options) throws IOException {
+    try (FixSession session = new FixSession(options)) {
+      Set<Path> submitted = new HashSet<>();
+      for (Map.Entry<Path, ? extends Collection<Path>> entry : filesByRoot.entrySet()) {
+        for (Path file : entry.getValue()) {
+          if (session.isSelected(file, entry.getKey())
+              && submitted.add(file.toAbsolutePath().normalize())) {
+            session.submit(file, entry.getKey(), null);
+          }
+        }
+      }
+      session.awaitSubmitted();
+      session.completed();
+      return session.changedFiles();
+    }
+  }
+
+  private static void submitFiles(Path root, Collection<Path> files, FixSession session) {
+    for (Path p : files) {
+      if (session.isSelected(p, root)) {
+        session.submit(p, root, null);
+      }
+    }
+  }
+
+  /**
+   * Fixes the staged contents of the Java files added or modified in the git index
+   * and stages the fixed contents. All blobs are read through one cat-file process.
+   *
+   * @param path a directory in a git working tree; only files under it are fixed
+   * @param session the configuration and caches for the run
+   * @param updateWorkTree true to also write the fixed contents to working tree files
+   *     that have no unstaged changes
+   * @throws IOException if git fails
+   */
+  private static void fixStaged(Path path, FixSession session, boolean updateWorkTree)
+      throws IOException {
+    List<GitIndex.StagedFile> updated = new ArrayList<>();
+    try (GitIndex.BlobReader blobs = new GitIndex.BlobReader(path)) {
+      for (GitIndex.StagedFile staged : GitIndex.stagedJavaFiles(path)) {
+        Path file = path.resolve(staged.path);
+        if (session.isStopped()) {
+          break;
+        }
+        if (!session.isSelected(file, path)) {
+          continue;
+        }
+        byte[] content = blobs.read(staged.blob);
+        byte[] fixed;
+        try {
+          fixed = session.fixContent(file, path, content);
+        } catch (IOException e) {
+          session.reportFailure(file, e);
+          continue;
+        }
+        if (fixed == null || session.isDryrun()) {
+          continue;
+        }
+        updated.add(new GitIndex.StagedFile(staged.mode, GitIndex.writeBlob(path, fixed),
+            staged.path, staged.indexPath));
+        session.statistics().written(fixed.length);
+        if (updateWorkTree) {
+          if (Files.isRegularFile(file) && Arrays.equals(content, Files.readAllBytes(file))) {
+            Files.write(file, fixed);
+          } else {
+            System.err.println("Not updating " + file + " because it has unstaged changes");
+          }
+        }
+      }
+    }
+    GitIndex.updateIndex(path, updated);
+  }
+
+  /**
+   * Returns the version of DocFix, which invalidates caches written by other versions.
+   *
+   * @return the version, or "unknown" if it was not recorded at build time
+   */
+  static String version() {
+    try (InputStream in = DocFix.class.getResourceAsStream("docfix.properties")) {
+      if (in != null) {
+        Properties properties = new Properties();
+        properties.load(in);
+        return properties.getProperty("version", "unknown");
+      }
+    } catch (IOException ex) {
+      // fall through to unknown
+    }
+    return "unknown";
+  }
+
   /**
    * Main method that applies Javadoc fixes to the file specified as the first
-   * command line argument.
+   * command line argument. With the single argument --daemon it instead starts
+   * a daemon that serves requests from {@link DaemonClient}.
    *
-   * @param args command line arguments; supported flags: [--dryrun] [-encoding charset] &lt;file-or-directory&gt;
+   * @param args command line arguments; supported flags:
+   *     [--dryrun] [--watch] [--encoding-report] [-encoding charset] [--cache file] [--result-cache dir] [--journal file [--resume]] [--since ref] [--staged [--update-worktree]] [--check [--fail-fast]] [--threads n] [--include patterns] [--exclude patterns] [--output-dir dir] [--output-archive file] &lt;file-or-directory-or-archive&gt;
    */
   public static void main(String[] args) {
+    if (args.length == 1 && "--daemon".equals(args[0])) {
+      serveDaemon();
+      return;
+    }
+    int status = run(args, Paths.get(""));
+    if (status != 0) {
+      System.exit(status);
+    }
+  }
+
+  /**
+   * Starts a daemon that serves requests from {@link DaemonClient} until it is stopped.
+   */
+  private static void serveDaemon() {
+    try (Daemon daemon = new Daemon(Daemon.defaultDirectory())) {
+      System.err.println("DocFix daemon listening on port " + daemon.port());
+      daemon.serve();
+    } catch (IOException ex) {
+      System.err.println("Error running daemon: " + ex.getMessage());
+      System.exit(1);
+    }
+  }
+
+  /**
+   * Runs the command line tool without exiting the JVM, so that a daemon can
+   * serve many requests from one process.
+   *
+   * @param args the command line arguments
+   * @param workingDirectory the directory that relative paths are resolved against
+   * @return the exit status, 0 on success
+   */
+  static int run(String[] args, Path workingDirectory) {
+    return run(args, workingDirectory, null);
+  }
+
+  /**
+   * Runs the command line tool with state kept from earlier runs, such as the
+   * parsed .editorconfig files a daemon holds between requests.
+   *
+   * @param args the command line arguments
+   * @param workingDirectory the directory that relative paths are resolved against
+   * @param context the state shared with other runs, or null
+   * @return the exit status, 0 on success
+   */
+  static int run(String[] args, Path workingDirectory, FixContext context) {
     int argIndex = 0;
-    boolean dryrun = false;
-    Charset encoding = null;
+    boolean encodingReport = false;
+    boolean watch = false;
+    Path outputArchive = null;
+    FixOptions options = new FixOptions().setContext(context);
+    List<String> includes = new ArrayList<>();
+    List<String> excludes = new ArrayList<>();
 
     // Parse command line arguments
     while (argIndex < args.length && args[argIndex].startsWith("-")) {
       if ("--dryrun".equals(args[argIndex])) {
-        dryrun = true;
+        options.setDryrun(true);
+        argIndex++;
+      } else if ("--watch".equals(args[argIndex])) {
+        watch = true;
+        argIndex++;
+      } else if ("--encoding-report".equals(args[argIndex])) {
+        encodingReport = true;
         argIndex++;
       } else if ("-encoding".equals(args[argIndex])) {
         if (argIndex + 1 >= args.length) {
           System.err.println("Error: -encoding flag requires a charset name");
-          System.exit(1);
+          return 1;
         }
         try {
-          encoding = Charset.forName(args[argIndex + 1]);
+          options.setEncoding(Charset.forName(args[argIndex + 1]));
         } catch (IllegalCharsetNameException | UnsupportedCharsetException e) {
           System.err.println("Error: Invalid charset name: " + args[argIndex + 1]);
-          System.exit(1);
+          return 1;
+        }
+        argIndex += 2;
+      } else if ("--cache".equals(args[argIndex])) {
+        if (argIndex + 1 >= args.length) {
+          System.err.println("Error: --cache flag requires a file name");
+          return 1;
+        }
+        options.setCacheFile(workingDirectory.resolve(args[argIndex + 1]));
+        argIndex += 2;
+      } else if ("--result-cache".equals(args[argIndex])) {
+        if (argIndex + 1 >= args.length) {
+          System.err.println("Error: --result-cache flag requires a directory");
+          return 1;
+        }
+        options.setResultCacheDirectory(workingDirectory.resolve(args[argIndex + 1]));
+        argIndex += 2;
+      } else if ("--journal".equals(args[argIndex])) {
+        if (argIndex + 1 >= args.length) {
+          System.err.println("Error: --journal flag requires a file name");
+          return 1;
+        }
+        options.setJournalFile(workingDirectory.resolve(args[argIndex + 1]));
+        argIndex += 2;
+      } else if ("--resume".equals(args[argIndex])) {
+        options.setResume(true);
+        argIndex++;
+      } else if ("--staged".equals(args[argIndex])) {
+        options.setStaged(true);
+        argIndex++;
+      } else if ("--update-worktree".equals(args[argIndex])) {
+        options.setUpdateWorkTree(true);
+        argIndex++;
+      } else if ("--include".equals(args[argIndex]) || "--exclude".equals(args[argIndex])) {
+        if (argIndex + 1 >= args.length) {
+          System.err.println("Error: " + args[argIndex] + " flag requires a pattern");
+          return 1;
+        }
+        List<String> patterns = "--include".equals(args[argIndex]) ? includes : excludes;
+        patterns.addAll(Arrays.asList(args[argIndex + 1].split(",")));
+        argIndex += 2;
+      } else if ("--check".equals(args[argIndex])) {
+        options.setCheck(true);
+        argIndex++;
+      } else if ("--fail-fast".equals(args[argIndex])) {
+        options.setFailFast(true);
+        argIndex++;
+      } else if ("--threads".equals(args[argIndex])) {
+        if (argIndex + 1 >= args.length) {
+          System.err.println("Error: --threads flag requires a number");
+          return 1;
+        }
+        try {
+          options.setThreads(Integer.parseInt(args[argIndex + 1]));
+        } catch (IllegalArgumentException e) {
+          System.err.println("Error: Invalid thread count: " + args[argIndex + 1]);
+          return 1;
+        }
+        argIndex += 2;
+      } else if ("--output-dir".equals(args[argIndex])) {
+        if (argIndex + 1 >= args.length) {
+          System.err.println("Error: --output-dir flag requires a directory");
+          return 1;
         }
+        options.setOutputDirectory(workingDirectory.resolve(args[argIndex + 1]));
+        argIndex += 2;
+      } else if ("--output-archive".equals(args[argIndex])) {
+        if (argIndex + 1 >= args.length) {
+          System.err.println("Error: --output-archive flag requires a file name");
+          return 1;
+        }
+        outputArchive = workingDirectory.resolve(args[argIndex + 1]);
+        argIndex += 2;
+      } else if ("--since".equals(args[argIndex])) {
+        if (argIndex + 1 >= args.length) {
+          System.err.println("Error: --since flag requires a git ref");
+          return 1;
+        }
+        if (args[argIndex + 1].startsWith("-")) {
+          System.err.println("Error: Invalid git ref: " + args[argIndex + 1]);
+          return 1;
+        }
+        options.setSince(args[argIndex + 1]);
         argIndex += 2;
       } else {
         System.err.println("Error: Unknown flag: " + args[argIndex]);
-        System.exit(1);
+        return 1;
       }
     }
 
+    if (options.isResume() && options.getJournalFile() == null) {
+      System.err.println("Error: --resume requires --journal");
+      return 1;
+    }
+
+    options.setIncludes(includes).setExcludes(excludes);
+
+    if (options.isFailFast() && !options.isCheck()) {
+      System.err.println("Error: --fail-fast requires --check");
+      return 1;
+    }
+
+    if (options.isUpdateWorkTree() && !options.isStaged()) {
+      System.err.println("Error: --update-worktree requires --staged");
+      return 1;
+    }
+
+    if (options.getOutputDirectory() != null && (options.isStaged() || watch)) {
+      System.err.println("Error: --output-dir cannot be combined with --staged or --watch");
+      return 1;
+    }
+
     if (args.length <= argIndex) {
-      System.err.println("Usage: java DocFix [--dryrun] [-encoding charset] <file-or-directory>");
-      System.exit(1);
+      System.err.println("Usage: java DocFix [--dryrun] [--watch] [--encoding-report] [-encoding charset] [--cache file] [--result-cache dir] [--journal file [--resume]] [--since ref] [--staged [--update-worktree]] [--check [--fail-fast]] [--threads n] [--include patterns] [--exclude patterns] [--output-dir dir] [--output-archive file] <file-or-directory-or-archive>");
+      return 1;
     }
 
-    Path path = Paths.get(args[argIndex]);
+    Path path = workingDirectory.resolve(args[argIndex]);
 
     // Check if the path exists
     if (!Files.exists(path)) {
       System.err.println("Error: File or directory does not exist: " + path);
-      System.exit(1);
+      return 1;
     }
 
-    if (Files.isDirectory(path)) {
+    if (isArchive(path)) {
+      if (watch || options.isStaged() || options.getSince() != null
+          || options.getOutputDirectory() != null) {
+        System.err.println(
+            "Error: an archive cannot be combined with --watch, --staged, --since, or --output-dir");
+        return 1;
+      }
       try {
-        fixDirectory(path, dryrun, encoding);
+        if (!fixArchive(path, outputArchive, options).isEmpty() && options.isCheck()) {
+          return 1;
+        }
+      } catch (IOException ex) {
+        System.err.println("Error processing archive " + path + ": " + ex.getMessage());
+        return 1;
+      }
+    } else if (outputArchive != null) {
+      System.err.println("Error: --output-archive requires a .jar or .zip archive: " + path);
+      return 1;
+    } else if (watch) {
+      if (options.isCheck()) {
+        System.err.println("Error: --watch cannot be combined with --check");
+        return 1;
+      }
+      if (!Files.isDirectory(path)) {
+        System.err.println("Error: --watch requires a directory: " + path);
+        return 1;
+      }
+      try (FixSession session = new FixSession(options, workingDirectory);
+          Watcher watcher = new Watcher(path, session, Watcher.DEFAULT_DEBOUNCE_MILLIS)) {
+        System.err.println("Watching " + path + " for changes. Press Ctrl-C to stop.");
+        watcher.run();
+      } catch (IOException ex) {
+        System.err.println("Error watching directory " + path + ": " + ex.getMessage());
+        return 1;
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        return 1;
+      }
+    } else if (Files.isDirectory(path)) {
+      try (FixSession session = new FixSession(options, workingDirectory)) {
+        fixDirectory(path, session, options);
+        if (encodingReport) {
+          System.out.println(session.encodings().report(path));
+        }
+        if (options.isCheck() && !session.changedFiles().isEmpty()) {
+          return 1;
+        }
       } catch (IOException ex) {
         System.err.println("Error walking directory " + path + ": " + ex.getMessage());
-        System.exit(1);
+        return 1;
       }
     } else {
-      try {
-        if (dryrun) {
-          Charset charset = encoding != null ? encoding : EncodingDetector.detectEncoding(path);
-          String original = Files.readString(path, charset);
-          String fixed = fix(original);
-          if (!original.equals(fixed)) {
-            java.nio.file.Path cwd = java.nio.file.Paths.get("").toAbsolutePath();
-            java.nio.file.Path relPath = cwd.relativize(path.toAbsolutePath());
-            System.out.println(relPath);
-            printChangedLines(original, fixed);
-          }
-        } else {
-          fix(path, encoding);
+      try (FixSession session = new FixSession(options, workingDirectory)) {
+        if (session.fix(path, path) && options.isCheck()) {
+          return 1;
         }
       } catch (IOException e) {
         System.err.println("Error processing file " + path + ": " + e.getMessage());
-        System.exit(1);
-      }
-    }
-  }
-
-  /**
-   * Prints only the changed lines between the original and fixed content, showing
-   * both old and new lines.
-   */
-  private static void printChangedLines(String original, String fixed) {
-    String[] origLines = original.split("\\r?\\n");
-    String[] fixedLines = fixed.split("\\r?\\n");
-    int max = Math.max(origLines.length, fixedLines.length);
-    for (int i = 0; i < max; i++) {
-      String origLine = i < origLines.length ? origLines[i] : "";
-      String fixedLine = i < fixedLines.length ? fixedLines[i] : "";
-      if (!origLine.equals(fixedLine)) {
-        if (!origLine.isEmpty()) {
-          System.out.println(origLine);
-        }
-        if (!fixedLine.isEmpty()) {
-          System.out.println(fixedLine);
-        }
+        return 1;
       }
     }
+    return 0;
   }
 }
@@ -0,0 +1,428 @@
+package com.elharo.docfix;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Resolves the <a href="https://editorconfig.org/">EditorConfig</a> settings
+ * that apply to a source file: the charset and the indentation.
+ *
+ * <p>Each .editorconfig file is parsed at most once per instance, and the chain
+ * of .editorconfig files that applies to a directory is computed once and shared
+ * by every file in that directory and its subdirectories.
+ */
+final class EditorConfig {
+
+  static final String FILE_NAME = ".editorconfig";
+
+  private static final Pattern NUMERIC_RANGE = Pattern.compile("(-?\\d+)\\.\\.(-?\\d+)");
+
+  private static final ConfigFile NO_CONFIG =
+      new ConfigFile(null, false, Collections.emptyList());
+
+  // Parsed .editorconfig file for each directory, or NO_CONFIG if the directory has none
+  private final Map<Path, ConfigFile> configFiles = new ConcurrentHashMap<>();
+  // Size and modification time of each directory's .editorconfig file when it was parsed
+  private final Map<Path, String> stamps = new ConcurrentHashMap<>();
+  // Applicable .editorconfig files for each directory, outermost first
+  private final Map<Path, List<ConfigFile>> chains = new ConcurrentHashMap<>();
+
+  /**
+   * Resolves the settings for a file.
+   *
+   * @param file the source file
+   * @return the declared settings
+   * @throws IOException if an .editorconfig file cannot be read
+   */
+  Settings settings(Path file) throws IOException {
+    Path absolute = file.toAbsolutePath().normalize();
+    Path directory = absolute.getParent();
+    if (directory == null) {
+      return Settings.NONE;
+    }
+
+    Map<String, String> properties = new HashMap<>();
+    for (ConfigFile config : chain(directory)) {
+      config.apply(absolute, properties);
+    }
+    return properties.isEmpty() ? Settings.NONE : new Settings(properties);
+  }
+
+  /**
+   * Returns the .editorconfig files that apply to files in a directory,
+   * outermost first, stopping at the innermost file that declares root = true.
+   */
+  private List<ConfigFile> chain(Path directory) throws IOException {
+    List<ConfigFile> chain = chains.get(directory);
+    if (chain != null) {
+      return chain;
+    }
+
+    ConfigFile config = configFile(directory);
+    Path parent = directory.getParent();
+    if (config.root || parent == null) {
+      chain = config == NO_CONFIG ? Collections.emptyList() : List.of(config);
+    } else if (config == NO_CONFIG) {
+      chain = chain(parent);
+    } else {
+      List<ConfigFile> list = new ArrayList<>(chain(parent));
+      list.add(config);
+      chain = Collections.unmodifiableList(list);
+    }
+    chains.put(directory, chain);
+    return chain;
+  }
+
+  private ConfigFile configFile(Path directory) throws IOException {
+    ConfigFile config = configFiles.get(directory);
+    if (config == null) {
+      Path file = directory.resolve(FILE_NAME);
+      stamps.put(directory, stamp(file));
+      config = Files.isRegularFile(file) ? ConfigFile.parse(file) : NO_CONFIG;
+      configFiles.put(directory, config);
+    }
+    return config;
+  }
+
+  /**
+   * Forgets the parsed .editorconfig files that were created, changed, or deleted
+   * since they were read, so that an instance kept for a long time, as by a daemon,
+   * sees edits. Costs one stat per directory seen. Must not run concurrently with
+   * {@link #settings(Path)}.
+   */
+  void revalidate() {
+    boolean changed = false;
+    for (Map.Entry<Path, String> entry : stamps.entrySet()) {
+      Path directory = entry.getKey();
+      if (!entry.getValue().equals(stamp(directory.resolve(FILE_NAME)))) {
+        stamps.remove(directory);
+        configFiles.remove(directory);
+        changed = true;
+      }
+    }
+    if (changed) {
+      chains.clear();
+    }
+  }
+
+  private static String stamp(Path file) {
+    try {
+      BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+      return attributes.size() + "@" + attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+    } catch (IOException ex) {
+      return "none";
+    }
+  }
+
+  /**
+   * Converts an EditorConfig glob into a regular expression matched against
+   * the path of a file relative to the directory of the .editorconfig file,
+   * with / as the separator.
+   *
+   * @param glob the section name
+   * @return the compiled pattern
+   */
+  // visible for testing
+  static Pattern compileGlob(String glob) {
+    StringBuilder regex = new StringBuilder();
+    if (glob.startsWith("/")) {
+      glob = glob.substring(1);
+    } else if (!glob.contains("/")) {
+      regex.append("(?:.*/)?"); // a glob without a slash matches in any directory
+    }
+    appendGlob(glob, regex);
+    return Pattern.compile(regex.toString());
+  }
+
+  private static void appendGlob(String glob, StringBuilder regex) {
+    for (int i = 0; i < glob.length(); i++) {
+      char c = glob.charAt(i);
+      switch (c) {
+        case '*':
+          if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+            regex.append(".*");
+            i++;
+          } else {
+            regex.append("[^/]*");
+          }
+          break;
+        case '?':
+          regex.append("[^/]");
+          break;
+        case '[': {
+          int end = glob.indexOf(']', i + 1);
+          if (end == -1) {
+            regex.append("\\[");
+          } else {
+            String set = glob.substring(i + 1, end);
+            regex.append('[');
+            if (set.startsWith("!")) {
+              regex.append('^');
+              set = set.substring(1);
+            }
+            regex.append(set.replace("\\", "\\\\").replace("[", "\\[")).append(']');
+            i = end;
+          }
+          break;
+        }
+        case '{': {
+          int end = matchingBrace(glob, i);
+          if (end == -1) {
+            regex.append("\\{");
+            break;
+          }
+          String inner = glob.substring(i + 1, end);
+          Matcher range = NUMERIC_RANGE.matcher(inner);
+          List<String> alternatives = splitAlternatives(inner);
+          if (range.matches()) {
+            appendRange(Integer.parseInt(range.group(1)), Integer.parseInt(range.group(2)), regex);
+          } else if (alternatives.size() > 1) {
+            regex.append("(?:");
+            for (int a = 0; a < alternatives.size(); a++) {
+              if (a > 0) {
+                regex.append('|');
+              }
+              appendGlob(alternatives.get(a), regex);
+            }
+            regex.append(')');
+          } else {
+            regex.append(Pattern.quote("{" + inner + "}"));
+          }
+          i = end;
+          break;
+        }
+        case '\\':
+          if (i + 1 < glob.length()) {
+            i++;
+            regex.append(Pattern.quote(String.valueOf(glob.charAt(i))));
+          }
+          break;
+        default:
+          if ("().+^$|".indexOf(c) >= 0) {
+            regex.append('\\');
+          }
+          regex.append(c);
+      }
+    }
+  }
+
+  private static int matchingBrace(String glob, int open) {
+    int depth = 0;
+    for (int i = open; i < glob.length(); i++) {
+      char c = glob.charAt(i);
+      if (c == '\\') {
+        i++;
+      } else if (c == '{') {
+        depth++;
+      } else if (c == '}' && --depth == 0) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static List<String> splitAlternatives(String inner) {
+    List<String> alternatives = new ArrayList<>();
+    int depth = 0;
+    int start = 0;
+    for (int i = 0; i < inner.length(); i++) {
+      char c = inner.charAt(i);
+      if (c == '\\') {
+        i++;
+      } else if (c == '{') {
+        depth++;
+      } else if (c == '}') {
+        depth--;
+      } else if (c == ',' && depth == 0) {
+        alternatives.add(inner.substring(start, i));
+        start = i + 1;
+      }
+    }
+    alternatives.add(inner.substring(start));
+    return alternatives;
+  }
+
+  private static void appendRange(int from, int to, StringBuilder regex) {
+    int low = Math.min(from, to);
+    int high = Math.max(from, to);
+    if (high - low > 1000) {
+      regex.append("-?\\d+"); // too many to list, so accept any integer
+      return;
+    }
+    regex.append("(?:");
+    for (int n = low; n <= high; n++) {
+      if (n > low) {
+        regex.append('|');
+      }
+      regex.append(n);
+    }
+    regex.append(')');
+  }
+
+  /**
+   * One parsed .editorconfig file.
+   */
+  private static final class ConfigFile {
+
+    private final Path directory;
+    private final boolean root;
+    private final List<Section> sections;
+
+    ConfigFile(Path directory, boolean root, List<Section> sections) {
+      this.directory = directory;
+      this.root = root;
+      this.sections = sections;
+    }
+
+    static ConfigFile parse(Path file) throws IOException {
+      boolean root = false;
+      List<Section> sections = new ArrayList<>();
+      Section current = null;
+      for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+        line = line.strip();
+        if (line.isEmpty() || line.startsWith("#") || line.startsWith(";")) {
+          continue;
+        }
+        if (line.startsWith("[") && line.endsWith("]")) {
+          current = new Section(compileGlob(line.substring(1, line.length() - 1)));
+          sections.add(current);
+          continue;
+        }
+        int equals = line.indexOf('=');
+        if (equals <= 0) {
+          continue;
+        }
+        String key = line.substring(0, equals).strip().toLowerCase(Locale.ROOT);
+        String value = line.substring(equals + 1).strip().toLowerCase(Locale.ROOT);
+        if (current == null) {
+          root |= "root".equals(key) && "true".equals(value);
+        } else {
+          current.properties.put(key, value);
+        }
+      }
+      return new ConfigFile(file.getParent(), root, sections);
+    }
+
+    void apply(Path file, Map<String, String> properties) {
+      StringBuilder relative = new StringBuilder();
+      for (Path name : directory.relativize(file)) {
+        if (relative.length() > 0) {
+          relative.append('/');
+        }
+        relative.append(name);
+      }
+      for (Section section : sections) {
+        if (section.glob.matcher(relative).matches()) {
+          for (Map.Entry<String, String> entry : section.properties.entrySet()) {
+            if ("unset".equals(entry.getValue())) {
+              properties.remove(entry.getKey());
+            } else {
+              properties.put(entry.getKey(), entry.getValue());
+            }
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * A glob and the properties declared for the files it matches.
+   */
+  private static final class Section {
+
+    private final Pattern glob;
+    private final Map<String, String> properties = new LinkedHashMap<>();
+
+    Section(Pattern glob) {
+      this.glob = glob;
+    }
+  }
+
+  /**
+   * The settings declared for one file.
+   */
+  static final class Settings {
+
+    static final Settings NONE = new Settings(Collections.emptyMap());
+
+    /**
+     * The declared charset, or null if none is declared or it is not recognized.
+     */
+    final Charset charset;
+
+    /**
+     * The declared indentation, with defaults for anything not declared.
+     */
+    final Indentation indentation;
+
+    private Settings(Map<String, String> properties) {
+      this.charset = toCharset(properties.get("charset"));
+
+      boolean useTabs = "tab".equals(properties.get("indent_style"));
+      int tabWidth = Indentation.DEFAULT.tabWidth;
+      Integer declared = toPositiveInt(properties.get("tab_width"));
+      if (declared == null) {
+        // tab_width defaults to indent_size when that is a number
+        declared = toPositiveInt(properties.get("indent_size"));
+      }
+      if (declared != null) {
+        tabWidth = declared;
+      }
+      this.indentation = tabWidth == Indentation.DEFAULT.tabWidth && !useTabs
+          ? Indentation.DEFAULT : new Indentation(tabWidth, useTabs);
+    }
+
+    @Override
+    public String toString() {
+      return "charset=" + (charset == null ? "" : charset.name())
+          + ", tab_width=" + indentation.tabWidth
+          + ", indent_style=" + (indentation.useTabs ? "tab" : "space");
+    }
+
+    private static Charset toCharset(String value) {
+      if (value == null) {
+        return null;
+      }
+      switch (value) {
+        case "latin1":
+          return StandardCharsets.ISO_8859_1;
+        case "utf-8":
+        case "utf-8-bom":
+          return StandardCharsets.UTF_8;
+        case "utf-16be":
+          return StandardCharsets.UTF_16BE;
+        case "utf-16le":
+          return StandardCharsets.UTF_16LE;
+        default:
+          return null;
+      }
+    }
+
+    private static Integer toPositiveInt(String value) {
+      if (value == null) {
+        return null;
+      }
+      try {
+        int n = Integer.parseInt(value);
+        return n > 0 ? n : null;
+      } catch (NumberFormatException ex) {
+        return null;
+      }
+    }
+  }
+}
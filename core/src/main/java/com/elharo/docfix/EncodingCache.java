@@ -0,0 +1,134 @@
+package com.elharo.docfix;
+
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers the encodings detected for the files under each source root.
+ * Files in one source root nearly always share an encoding, so once enough
+ * files in a root agree, later files in that root are decoded in the adopted
+ * charset after a cheap verification instead of running full detection.
+ * Files that fail verification go through full detection as usual.
+ *
+ * <p>The cache also counts the charsets used in each root so that users can
+ * see where pinning an explicit encoding would pay off.
+ */
+final class EncodingCache {
+
+  // Number of consecutive agreeing detections before a root adopts a charset
+  private static final int ADOPTION_THRESHOLD = 16;
+
+  private final Map<Path, RootState> roots = new ConcurrentHashMap<>();
+
+  /**
+   * Decodes the complete contents of a file under the given source root.
+   *
+   * @param root the source root containing the file
+   * @param content the complete file contents
+   * @return the decoded text and the charset it was decoded with
+   * @throws CharacterCodingException if the content is malformed in the detected encoding
+   */
+  EncodingDetector.Decoded decode(Path root, byte[] content) throws CharacterCodingException {
+    RootState state = roots.computeIfAbsent(root, r -> new RootState());
+    Charset adopted = state.adopted();
+    if (adopted != null) {
+      EncodingDetector.Decoded decoded = EncodingDetector.decodeIfVerified(content, adopted);
+      if (decoded != null) {
+        state.count(decoded.charset);
+        return decoded;
+      }
+    }
+    EncodingDetector.Decoded decoded = EncodingDetector.decode(content);
+    state.detected(decoded.charset);
+    return decoded;
+  }
+
+  /**
+   * Returns the number of files decoded in each charset under a source root,
+   * most common first.
+   *
+   * @param root the source root
+   * @return the charset distribution, empty if no files in the root were decoded
+   */
+  Map<Charset, Integer> distribution(Path root) {
+    RootState state = roots.get(root);
+    return state == null ? Collections.emptyMap() : state.distribution();
+  }
+
+  /**
+   * Formats the charset distribution of a source root on one line,
+   * for example {@code src/main/java: UTF-8 1203, ISO-8859-1 4}.
+   *
+   * @param root the source root
+   * @return the report line
+   */
+  String report(Path root) {
+    StringBuilder sb = new StringBuilder();
+    sb.append(root).append(':');
+    Map<Charset, Integer> distribution = distribution(root);
+    if (distribution.isEmpty()) {
+      sb.append(" no files decoded");
+    }
+    String separator = " ";
+    for (Map.Entry<Charset, Integer> entry : distribution.entrySet()) {
+      sb.append(separator).append(entry.getKey().name()).append(' ').append(entry.getValue());
+      separator = ", ";
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Detection state of one source root.
+   */
+  private static final class RootState {
+
+    private final Map<Charset, Integer> counts = new LinkedHashMap<>();
+    private Charset candidate;
+    private int streak;
+    private Charset adopted;
+
+    synchronized Charset adopted() {
+      return adopted;
+    }
+
+    synchronized void count(Charset charset) {
+      counts.merge(charset, 1, Integer::sum);
+    }
+
+    /**
+     * Records the result of a full detection, adopting the charset once enough
+     * consecutive files agree and dropping the adopted charset when one disagrees.
+     */
+    synchronized void detected(Charset charset) {
+      count(charset);
+      if (charset.equals(candidate)) {
+        streak++;
+      } else {
+        candidate = charset;
+        streak = 1;
+        adopted = null;
+      }
+      if (streak >= ADOPTION_THRESHOLD && adopted == null && isVerifiable(charset)) {
+        adopted = charset;
+      }
+    }
+
+    synchronized Map<Charset, Integer> distribution() {
+      Map<Charset, Integer> sorted = new LinkedHashMap<>();
+      counts.entrySet().stream()
+          .sorted(Map.Entry.<Charset, Integer>comparingByValue().reversed())
+          .forEachOrdered(e -> sorted.put(e.getKey(), e.getValue()));
+      return sorted;
+    }
+
+    private static boolean isVerifiable(Charset charset) {
+      return StandardCharsets.UTF_8.equals(charset) || StandardCharsets.ISO_8859_1.equals(charset);
+    }
+  }
+}
@@ -2,7 +2,14 @@ package com.elharo.docfix;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
 import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -13,6 +20,37 @@ import java.nio.file.Path;
  */
 final class EncodingDetector {
 
+  private static final Charset UTF_32BE = Charset.forName("UTF-32BE");
+  private static final Charset UTF_32LE = Charset.forName("UTF-32LE");
+
+  // Label bits for the keyword automaton, one per family of byte encodings.
+  // UTF-8, ISO-8859-1, and US-ASCII all encode the keywords identically.
+  private static final int ASCII_KEYWORD = 1;
+  private static final int UTF_16LE_KEYWORD = 1 << 1;
+  private static final int UTF_16BE_KEYWORD = 1 << 2;
+  private static final int UTF_32LE_KEYWORD = 1 << 3;
+  private static final int UTF_32BE_KEYWORD = 1 << 4;
+
+  // Look for common Java keywords and patterns. package and import appear
+  // very early in most files and allow for early exit. Every valid Java
+  // file must contains one of class, interface, record, or enum and these also
+  // appear reasonably early in the file.
+  private static final String[] KEYWORDS = {
+    "package", "import", "class", "interface", "record", "enum"
+  };
+
+  private static final AhoCorasick KEYWORD_MATCHER = compileKeywordMatcher();
+
+  // Number of bytes sampled when the whole file is not examined
+  private static final int SAMPLE_SIZE = 4096;
+
+  // Reads eight bytes of a byte array as one long for word-at-a-time ASCII checks
+  private static final VarHandle LONG_VIEW =
+      MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+  // High bit of every byte in a long; zero after masking iff all eight bytes are ASCII
+  private static final long NON_ASCII_MASK = 0x8080808080808080L;
+
   private EncodingDetector() {
     // Utility class
   }
@@ -20,33 +58,157 @@ final class EncodingDetector {
   /**
    * Detects the character encoding of a Java source file.
    * Applies heuristics specific to Java files and defaults to UTF-8.
+   * Only the first 4096 bytes of the file are examined.
    *
    * @param file the Java source file to analyze
    * @return the detected charset, or UTF-8 if detection fails
    * @throws IOException if an I/O error occurs reading the file
    */
   static Charset detectEncoding(Path file) throws IOException {
+    return detectEncoding(file, false);
+  }
+
+  /**
+   * Detects the character encoding of a Java source file.
+   * Applies heuristics specific to Java files and defaults to UTF-8.
+   * Validating the whole file costs little more than validating the first
+   * 4096 bytes since almost all Java source is ASCII, and it avoids
+   * picking UTF-8 for a file whose first non-UTF-8 byte comes late.
+   *
+   * @param file the Java source file to analyze
+   * @param wholeFile true to examine the entire file, false to examine only the first 4096 bytes
+   * @return the detected charset, or UTF-8 if detection fails
+   * @throws IOException if an I/O error occurs reading the file
+   */
+  static Charset detectEncoding(Path file, boolean wholeFile) throws IOException {
+    if (wholeFile) {
+      byte[] content = Files.readAllBytes(file);
+      return detectEncoding(content, content.length, true);
+    }
+
     // Read first few bytes to check for BOM and initial content
-    byte[] buffer = new byte[4096];
+    byte[] buffer = new byte[SAMPLE_SIZE];
     int bytesRead;
     
     try (InputStream in = Files.newInputStream(file)) {
-      bytesRead = in.read(buffer);
+      bytesRead = in.readNBytes(buffer, 0, buffer.length);
     }
-    
-    if (bytesRead == -1) {
+    return detectEncoding(buffer, bytesRead, bytesRead < buffer.length);
+  }
+
+  /**
+   * Detects the character encoding of the initial bytes of a Java source file.
+   *
+   * @param buffer the bytes to analyze
+   * @param length the number of valid bytes in the buffer
+   * @param complete true if the buffer holds the entire file, false if it is a prefix
+   * @return the detected charset, or UTF-8 if detection fails
+   */
+  static Charset detectEncoding(byte[] buffer, int length, boolean complete) {
+    if (length == 0) {
       // Empty file, default to UTF-8
       return StandardCharsets.UTF_8;
     }
     
     // Check for BOM (Byte Order Mark)
-    Charset bomCharset = detectBOM(buffer, bytesRead);
+    Charset bomCharset = detectBOM(buffer, length);
     if (bomCharset != null) {
       return bomCharset;
     }
     
     // Apply Java-specific heuristics
-    return detectJavaEncoding(buffer, bytesRead);
+    return detectJavaEncoding(buffer, length, complete);
+  }
+
+  /**
+   * Decodes the complete contents of a Java source file, detecting the encoding
+   * in the same pass. Unless a BOM or the keyword scan indicates a UTF-16 or
+   * UTF-32 encoding, the content is decoded as UTF-8 with malformed input
+   * reported rather than replaced. Success is the UTF-8 verdict, so the common
+   * case decodes exactly once. Only when the content is not UTF-8 is it decoded
+   * again as ISO-8859-1, which cannot fail.
+   *
+   * @param content the complete file contents
+   * @return the decoded text and the charset it was decoded with
+   * @throws CharacterCodingException if a BOM or the keyword scan selects a wide
+   *     encoding and the content is malformed in that encoding
+   */
+  static Decoded decode(byte[] content) throws CharacterCodingException {
+    if (content.length == 0) {
+      return new Decoded(StandardCharsets.UTF_8, CharBuffer.allocate(0));
+    }
+
+    Charset bomCharset = detectBOM(content, content.length);
+    if (bomCharset != null) {
+      return decode(content, bomCharset);
+    }
+
+    // Java keywords in ASCII are the overwhelmingly common case and usually
+    // appear in the first few bytes, so this scan normally ends almost at once.
+    int sampleLength = Math.min(content.length, SAMPLE_SIZE);
+    int found = KEYWORD_MATCHER.scan(content, sampleLength, ASCII_KEYWORD);
+    if ((found & ASCII_KEYWORD) == 0 && found != 0) {
+      return decode(content, detectJavaEncoding(content, sampleLength, false));
+    }
+
+    try {
+      return decode(content, StandardCharsets.UTF_8);
+    } catch (CharacterCodingException ex) {
+      return new Decoded(StandardCharsets.ISO_8859_1,
+          StandardCharsets.ISO_8859_1.decode(ByteBuffer.wrap(content)));
+    }
+  }
+
+  /**
+   * Decodes the complete contents of a file in a charset expected from other
+   * files in the same source tree, after cheap checks that the file really
+   * is in that charset. Only UTF-8 and ISO-8859-1 can be verified this way.
+   *
+   * @param content the complete file contents
+   * @param expected the charset the file is expected to be in
+   * @return the decoded text, or null if the content fails verification and
+   *     full detection is needed
+   */
+  static Decoded decodeIfVerified(byte[] content, Charset expected) {
+    // ASCII text in a wide encoding has a zero byte at the start,
+    // and a BOM always takes precedence
+    if (content.length >= 2 && (content[0] == 0 || content[1] == 0)
+        || detectBOM(content, content.length) != null) {
+      return null;
+    }
+
+    if (StandardCharsets.UTF_8.equals(expected)) {
+      try {
+        return decode(content, StandardCharsets.UTF_8);
+      } catch (CharacterCodingException ex) {
+        return null;
+      }
+    } else if (StandardCharsets.ISO_8859_1.equals(expected)) {
+      // Every byte sequence is ISO-8859-1, so reject only
+      // files that look like UTF-8 with non-ASCII characters.
+      if (isAscii(content, content.length) || !isValidUTF8(content, content.length, true)) {
+        return new Decoded(StandardCharsets.ISO_8859_1,
+            StandardCharsets.ISO_8859_1.decode(ByteBuffer.wrap(content)));
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Decodes the complete contents of a file in the given charset, failing
+   * rather than substituting replacement characters for bad input.
+   *
+   * @param content the complete file contents
+   * @param charset the charset to decode with
+   * @return the decoded text and the charset it was decoded with
+   * @throws CharacterCodingException if the content is malformed or unmappable in the charset
+   */
+  static Decoded decode(byte[] content, Charset charset) throws CharacterCodingException {
+    CharBuffer text = charset.newDecoder()
+        .onMalformedInput(CodingErrorAction.REPORT)
+        .onUnmappableCharacter(CodingErrorAction.REPORT)
+        .decode(ByteBuffer.wrap(content));
+    return new Decoded(charset, text);
   }
 
   /**
@@ -57,6 +219,23 @@ final class EncodingDetector {
    * @return the charset indicated by BOM, or null if no BOM found
    */
   private static Charset detectBOM(byte[] buffer, int length) {
+    // UTF-32 BOMs must be checked before UTF-16 since FF FE also starts the UTF-32LE BOM
+    if (length >= 4 &&
+        buffer[0] == 0 &&
+        buffer[1] == 0 &&
+        (buffer[2] & 0xFF) == 0xFE &&
+        (buffer[3] & 0xFF) == 0xFF) {
+      return UTF_32BE;
+    }
+
+    if (length >= 4 &&
+        (buffer[0] & 0xFF) == 0xFF &&
+        (buffer[1] & 0xFF) == 0xFE &&
+        buffer[2] == 0 &&
+        buffer[3] == 0) {
+      return UTF_32LE;
+    }
+
     if (length >= 3 && 
         (buffer[0] & 0xFF) == 0xEF && 
         (buffer[1] & 0xFF) == 0xBB && 
@@ -82,36 +261,88 @@ final class EncodingDetector {
   /**
    * Applies Java-specific heuristics to detect encoding.
    * Java files must contain valid ASCII keywords and identifiers.
+   * A single pass over the buffer looks for the keywords in every
+   * candidate encoding at once without decoding anything.
    *
    * @param buffer the byte buffer to analyze
    * @param length the number of valid bytes in the buffer
+   * @param complete true if the buffer holds the entire file
    * @return the most likely charset for this Java file
    */
-  private static Charset detectJavaEncoding(byte[] buffer, int length) {
-    // Try UTF-8 first as it's the most common modern encoding
-    if (isValidUTF8(buffer, length) && containsJavaKeywords(buffer, length, StandardCharsets.UTF_8)) {
-      return StandardCharsets.UTF_8;
+  private static Charset detectJavaEncoding(byte[] buffer, int length, boolean complete) {
+    // ASCII keywords are by far the most common case, so stop at the first one
+    int found = KEYWORD_MATCHER.scan(buffer, length, ASCII_KEYWORD);
+
+    if ((found & ASCII_KEYWORD) != 0) {
+      // Try UTF-8 first as it's the most common modern encoding.
+      // Otherwise use ISO-8859-1 (Latin-1) as fallback for older files.
+      return isValidUTF8(buffer, length, complete) ? StandardCharsets.UTF_8 : StandardCharsets.ISO_8859_1;
     }
-    
-    // Try ISO-8859-1 (Latin-1) as fallback for older files
-    if (containsJavaKeywords(buffer, length, StandardCharsets.ISO_8859_1)) {
-      return StandardCharsets.ISO_8859_1;
+
+    // Wide encodings without a BOM. A keyword in one byte order usually matches
+    // the other byte order too, shifted by one byte, so when both match the
+    // first code unit decides. Java source starts with an ASCII character,
+    // whose low byte comes first in little endian.
+    boolean littleEndian = buffer[0] != 0;
+    if ((found & UTF_32LE_KEYWORD) != 0 && (littleEndian || (found & UTF_32BE_KEYWORD) == 0)) {
+      return UTF_32LE;
     }
-    
+    if ((found & UTF_32BE_KEYWORD) != 0) {
+      return UTF_32BE;
+    }
+    if ((found & UTF_16LE_KEYWORD) != 0 && (littleEndian || (found & UTF_16BE_KEYWORD) == 0)) {
+      return StandardCharsets.UTF_16LE;
+    }
+    if ((found & UTF_16BE_KEYWORD) != 0) {
+      return StandardCharsets.UTF_16BE;
+    }
+
     // Default to UTF-8 if nothing else works
     return StandardCharsets.UTF_8;
   }
 
+  /**
+   * Checks if every byte in the buffer is ASCII, eight bytes at a time.
+   *
+   * @param buffer the byte buffer to check
+   * @param length the number of valid bytes in the buffer
+   * @return true if the buffer contains only ASCII
+   */
+  private static boolean isAscii(byte[] buffer, int length) {
+    int i = 0;
+    long bits = 0;
+    for (; i + Long.BYTES <= length; i += Long.BYTES) {
+      bits |= (long) LONG_VIEW.get(buffer, i);
+    }
+    for (; i < length; i++) {
+      bits |= buffer[i];
+    }
+    return (bits & NON_ASCII_MASK) == 0;
+  }
+
   /**
    * Checks if the byte sequence is valid UTF-8.
+   * Runs of ASCII are skipped eight bytes at a time.
    *
    * @param buffer the byte buffer to check
    * @param length the number of valid bytes in the buffer
+   * @param complete true if the buffer holds the entire input so that a
+   *     sequence cut off by the end of the buffer is invalid
    * @return true if the sequence is valid UTF-8
    */
-  private static boolean isValidUTF8(byte[] buffer, int length) {
+  // visible for testing
+  static boolean isValidUTF8(byte[] buffer, int length, boolean complete) {
     int i = 0;
     while (i < length) {
+      // Skip ASCII a word at a time
+      while (i + Long.BYTES <= length
+          && ((long) LONG_VIEW.get(buffer, i) & NON_ASCII_MASK) == 0) {
+        i += Long.BYTES;
+      }
+      if (i == length) {
+        break;
+      }
+
       byte b = buffer[i];
       
       // ASCII character (0xxxxxxx)
@@ -135,7 +366,9 @@ final class EncodingDetector {
       // Check continuation bytes
       for (int j = 1; j <= extraBytes; j++) {
         if (i + j >= length) {
-          return true; // Incomplete sequence at end of buffer, assume valid
+          // Incomplete sequence at end of buffer, assume valid unless
+          // this is really the end of the input
+          return !complete;
         }
         if ((buffer[i + j] & 0xC0) != 0x80) {
           return false; // Invalid continuation byte
@@ -149,28 +382,43 @@ final class EncodingDetector {
   }
 
   /**
-   * Checks if the buffer contains common Java keywords when decoded with the given charset.
+   * Compiles an automaton that finds the Java keywords encoded in each
+   * of the candidate encodings.
    *
-   * @param buffer the byte buffer to check
-   * @param length the number of valid bytes in the buffer
-   * @param charset the charset to use for decoding
-   * @return true if Java keywords are found
+   * @return the keyword automaton
    */
-  private static boolean containsJavaKeywords(byte[] buffer, int length, Charset charset) {
-    String content = new String(buffer, 0, length, charset);
-
-    // TODO: replace with the AhoCorasick algorithm here
-    // By using AhoCorasick with byte strings instead of strings,
-    // we could check for multiple encodings in a single pass
-    // Look for common Java keywords and patterns. package and import appear
-    // very early in most files and allow for early exit. Every valid Java
-    // file must contains one of class, interface, record, or enum and these also
-    // appear reasonably early in the file.
-    return content.contains("package") ||
-           content.contains("import") ||
-           content.contains("class") ||
-           content.contains("interface") ||
-           content.contains("record") ||
-           content.contains("enum");
+  private static AhoCorasick compileKeywordMatcher() {
+    Charset[] charsets = {
+      StandardCharsets.US_ASCII, StandardCharsets.UTF_16LE, StandardCharsets.UTF_16BE,
+      UTF_32LE, UTF_32BE
+    };
+    int[] families = {
+      ASCII_KEYWORD, UTF_16LE_KEYWORD, UTF_16BE_KEYWORD, UTF_32LE_KEYWORD, UTF_32BE_KEYWORD
+    };
+    byte[][] patterns = new byte[KEYWORDS.length * charsets.length][];
+    int[] labels = new int[patterns.length];
+    int n = 0;
+    for (int i = 0; i < charsets.length; i++) {
+      for (String keyword : KEYWORDS) {
+        patterns[n] = keyword.getBytes(charsets[i]);
+        labels[n] = families[i];
+        n++;
+      }
+    }
+    return new AhoCorasick(patterns, labels);
+  }
+
+  /**
+   * The decoded text of a source file and the charset used to decode it.
+   */
+  static final class Decoded {
+
+    final Charset charset;
+    final CharBuffer text;
+
+    Decoded(Charset charset, CharBuffer text) {
+      this.charset = charset;
+      this.text = text;
+    }
   }
-}
\ No newline at end of file
+}
@@ -11,6 +11,10 @@ final class FileParser {
   private FileParser() {}
 
   static List<String> parseLines(String[] lines, String lineEnding) {
+    return parseLines(lines, lineEnding, Indentation.DEFAULT);
+  }
+
+  static List<String> parseLines(String[] lines, String lineEnding, Indentation indentation) {
     List<String> lines1 = List.of(lines);
     List<String> result = new ArrayList<>();
 
@@ -46,7 +50,7 @@ final class FileParser {
         }
 
         String originalComment = javadocBuilder.toString();
-        String fixedComment = DocComment.parse(null, originalComment).toJava();
+        String fixedComment = CommentCache.fix(originalComment, lineEnding, indentation);
         fixedComment = fixedComment.replace("\n", lineEnding);
         // TODO probably don't really need to do this if check
         // Only add the fixed comment if it's not empty (empty comments should be completely removed)
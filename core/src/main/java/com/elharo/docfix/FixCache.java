@@ -0,0 +1,387 @@
+package com.elharo.docfix;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * On-disk record of the source files that a previous run found already clean.
+ * The cache has two tiers. A file whose size, modification time, file key, and
+ * settings match its record is skipped without even being read. Otherwise a file
+ * whose content fingerprint matches its record is skipped without being decoded
+ * or parsed. The fingerprint covers the file contents and the per-file settings,
+ * and the whole cache is discarded when the DocFix version or the run
+ * configuration changes.
+ *
+ * <p>File metadata is not recorded for files modified shortly before the run
+ * started, because a later change within the timestamp granularity of the
+ * file system could leave the size and modification time unchanged.
+ * Such files are hashed again on the next run.
+ *
+ * <p>The cache file is a compact binary file written with {@link DataOutputStream}.
+ */
+final class FixCache {
+
+  private static final int MAGIC = 0x44466358; // "DFcX"
+  private static final int FORMAT = 2;
+
+  // Files modified this close to the start of the run are hashed again next time
+  private static final long RACY_MILLIS = 2000;
+
+  private final Path file;
+  private final String configuration;
+  private final long startMillis = System.currentTimeMillis();
+  private final Map<String, Entry> clean = new ConcurrentHashMap<>();
+  private final Set<String> seen = ConcurrentHashMap.newKeySet();
+  private final Set<String> walkedRoots = ConcurrentHashMap.newKeySet();
+  private volatile boolean modified;
+
+  private FixCache(Path file, String configuration) {
+    this.file = file;
+    this.configuration = configuration;
+  }
+
+  /**
+   * Loads the cache from a file. A missing, unreadable, or corrupt file, or one
+   * written by a different DocFix version or configuration, yields an empty cache.
+   *
+   * @param file the cache file
+   * @param configuration the settings of this run that affect the fixed output
+   * @return the cache
+   */
+  static FixCache load(Path file, String configuration) {
+    FixCache cache = new FixCache(file, configuration);
+    if (!Files.isRegularFile(file)) {
+      return cache;
+    }
+    try (DataInputStream in = new DataInputStream(
+        new BufferedInputStream(Files.newInputStream(file)))) {
+      if (in.readInt() != MAGIC || in.readInt() != FORMAT
+          || !DocFix.version().equals(in.readUTF()) || !configuration.equals(in.readUTF())) {
+        cache.modified = true; // rewrite it for this version and configuration
+        return cache;
+      }
+      // Few distinct settings are shared by many files, so they are stored once
+      String[] settings = new String[checkCount(in.readInt())];
+      for (int i = 0; i < settings.length; i++) {
+        settings[i] = in.readUTF();
+      }
+      int count = checkCount(in.readInt());
+      for (int i = 0; i < count; i++) {
+        String path = in.readUTF();
+        Fingerprint fingerprint = new Fingerprint(in.readLong(), in.readLong());
+        int index = in.readInt();
+        if (index < 0 || index >= settings.length) {
+          throw new IOException("Corrupt cache file: " + file);
+        }
+        String setting = settings[index];
+        long size = in.readLong();
+        long modified = in.readLong();
+        String fileKey = in.readUTF();
+        cache.clean.put(path, new Entry(fingerprint, setting, size, modified, fileKey));
+      }
+    } catch (IOException ex) {
+      // Only a cache, so start over
+      cache.clean.clear();
+      cache.modified = true;
+    }
+    return cache;
+  }
+
+  private static int checkCount(int count) throws IOException {
+    if (count < 0) {
+      throw new IOException("Corrupt cache file");
+    }
+    return count;
+  }
+
+  /**
+   * Computes the fingerprint of a file's contents and its per-file settings.
+   *
+   * @param content the complete file contents
+   * @param settings a description of the settings that apply to the file
+   * @return the fingerprint
+   */
+  static Fingerprint fingerprint(byte[] content, String settings) {
+    return fingerprint(hash(content, settings));
+  }
+
+  /**
+   * Takes the fingerprint from a hash computed by {@link #hash(byte[], String)},
+   * so callers that also need the full hash compute it only once.
+   *
+   * @param hash the SHA-256 hash of the settings and contents
+   * @return the fingerprint
+   */
+  static Fingerprint fingerprint(byte[] hash) {
+    return new Fingerprint(toLong(hash, 0), toLong(hash, 8));
+  }
+
+  /**
+   * Computes the SHA-256 hash of a file's per-file settings and contents.
+   *
+   * @param content the complete file contents
+   * @param settings a description of the settings that apply to the file
+   * @return the 32 byte hash
+   */
+  static byte[] hash(byte[] content, String settings) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      digest.update(settings.getBytes(StandardCharsets.UTF_8));
+      digest.update((byte) 0);
+      return digest.digest(content);
+    } catch (NoSuchAlgorithmException ex) {
+      throw new AssertionError("Every Java platform supports SHA-256", ex);
+    }
+  }
+
+  private static long toLong(byte[] bytes, int offset) {
+    long value = 0;
+    for (int i = offset; i < offset + Long.BYTES; i++) {
+      value = (value << 8) | (bytes[i] & 0xFF);
+    }
+    return value;
+  }
+
+  /**
+   * Notes that every Java file under a root is being visited in this run,
+   * so records for files under it that are not visited belong to deleted files.
+   *
+   * @param root the source root being walked
+   */
+  void walking(Path root) {
+    String key = key(root);
+    String separator = root.getFileSystem().getSeparator();
+    walkedRoots.add(key.endsWith(separator) ? key : key + separator);
+  }
+
+  /**
+   * Checks whether a file is unchanged since a previous run found it clean,
+   * judging only by its metadata and settings, so that it need not be read.
+   *
+   * @param source the source file
+   * @param settings a description of the settings that apply to the file
+   * @param attributes the current attributes of the file
+   * @return true if the file's metadata and settings match a clean record
+   */
+  boolean isUnchanged(Path source, String settings, BasicFileAttributes attributes) {
+    String key = key(source);
+    seen.add(key);
+    Entry entry = clean.get(key);
+    return entry != null && entry.size >= 0
+        && entry.size == attributes.size()
+        && entry.modified == modified(attributes)
+        && entry.fileKey.equals(fileKey(attributes))
+        && entry.settings.equals(settings);
+  }
+
+  /**
+   * Checks whether a file with the given fingerprint is known to be clean.
+   *
+   * @param source the source file
+   * @param fingerprint the fingerprint of its contents and settings
+   * @return true if a previous run found the same contents clean
+   */
+  boolean isClean(Path source, Fingerprint fingerprint) {
+    String key = key(source);
+    seen.add(key);
+    Entry entry = clean.get(key);
+    return entry != null && fingerprint.equals(entry.fingerprint);
+  }
+
+  /**
+   * Records that a file with the given fingerprint needs no fixes.
+   *
+   * @param source the source file
+   * @param fingerprint the fingerprint of its contents and settings
+   * @param settings a description of the settings that apply to the file
+   * @param attributes the attributes of the file when it was read,
+   *     or null to rely on the fingerprint alone
+   */
+  void markClean(Path source, Fingerprint fingerprint, String settings,
+      BasicFileAttributes attributes) {
+    String key = key(source);
+    seen.add(key);
+    Entry entry;
+    if (attributes == null || attributes.lastModifiedTime().toMillis() > startMillis - RACY_MILLIS) {
+      entry = new Entry(fingerprint, settings, -1, 0, "");
+    } else {
+      entry = new Entry(fingerprint, settings, attributes.size(), modified(attributes),
+          fileKey(attributes));
+    }
+    if (!entry.equals(clean.put(key, entry))) {
+      modified = true;
+    }
+  }
+
+  /**
+   * Records that a file needs fixes or has just been changed.
+   *
+   * @param source the source file
+   */
+  void markDirty(Path source) {
+    String key = key(source);
+    seen.add(key);
+    if (clean.remove(key) != null) {
+      modified = true;
+    }
+  }
+
+  /**
+   * Writes the cache back to its file if anything changed. Records for files
+   * under a walked root that were not visited in this run are dropped.
+   *
+   * @throws IOException if the cache file cannot be written
+   */
+  void save() throws IOException {
+    if (clean.keySet().removeIf(key -> !seen.contains(key) && isUnderWalkedRoot(key))) {
+      modified = true;
+    }
+    if (!modified) {
+      return;
+    }
+
+    Path parent = file.toAbsolutePath().getParent();
+    Files.createDirectories(parent);
+    Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+    try {
+      try (DataOutputStream out = new DataOutputStream(
+          new BufferedOutputStream(Files.newOutputStream(temp)))) {
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT);
+        out.writeUTF(DocFix.version());
+        out.writeUTF(configuration);
+        Map<String, Entry> snapshot = Map.copyOf(clean);
+        Map<String, Integer> settings = new LinkedHashMap<>();
+        for (Entry entry : snapshot.values()) {
+          settings.putIfAbsent(entry.settings, settings.size());
+        }
+        out.writeInt(settings.size());
+        for (String setting : settings.keySet()) {
+          out.writeUTF(setting);
+        }
+        out.writeInt(snapshot.size());
+        for (Map.Entry<String, Entry> record : snapshot.entrySet()) {
+          Entry entry = record.getValue();
+          out.writeUTF(record.getKey());
+          out.writeLong(entry.fingerprint.high);
+          out.writeLong(entry.fingerprint.low);
+          out.writeInt(settings.get(entry.settings));
+          out.writeLong(entry.size);
+          out.writeLong(entry.modified);
+          out.writeUTF(entry.fileKey);
+        }
+      }
+      Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+    modified = false;
+  }
+
+  private boolean isUnderWalkedRoot(String key) {
+    for (String root : walkedRoots) {
+      if (key.startsWith(root)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns the key of a file, which for an entry of an archive is its URI,
+   * so that it names the archive too.
+   */
+  private static String key(Path path) {
+    Path absolute = path.toAbsolutePath().normalize();
+    return absolute.getFileSystem() == FileSystems.getDefault()
+        ? absolute.toString() : absolute.toUri().toString();
+  }
+
+  private static long modified(BasicFileAttributes attributes) {
+    return attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+  }
+
+  private static String fileKey(BasicFileAttributes attributes) {
+    Object fileKey = attributes.fileKey();
+    return fileKey == null ? "" : fileKey.toString();
+  }
+
+  /**
+   * The record of one clean file. A negative size means the metadata was not recorded.
+   */
+  private static final class Entry {
+
+    private final Fingerprint fingerprint;
+    private final String settings;
+    private final long size;
+    private final long modified;
+    private final String fileKey;
+
+    Entry(Fingerprint fingerprint, String settings, long size, long modified, String fileKey) {
+      this.fingerprint = fingerprint;
+      this.settings = settings;
+      this.size = size;
+      this.modified = modified;
+      this.fileKey = fileKey;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Entry)) {
+        return false;
+      }
+      Entry other = (Entry) o;
+      return fingerprint.equals(other.fingerprint) && settings.equals(other.settings)
+          && size == other.size && modified == other.modified && fileKey.equals(other.fileKey);
+    }
+
+    @Override
+    public int hashCode() {
+      return fingerprint.hashCode();
+    }
+  }
+
+  /**
+   * The first 128 bits of the SHA-256 hash of a file's settings and contents.
+   */
+  static final class Fingerprint {
+
+    private final long high;
+    private final long low;
+
+    Fingerprint(long high, long low) {
+      this.high = high;
+      this.low = low;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Fingerprint)) {
+        return false;
+      }
+      Fingerprint other = (Fingerprint) o;
+      return high == other.high && low == other.low;
+    }
+
+    @Override
+    public int hashCode() {
+      return Long.hashCode(high);
+    }
+  }
+}
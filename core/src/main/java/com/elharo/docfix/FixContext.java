@@ -0,0 +1,61 @@
+package com.elharo.docfix;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * State shared by many runs in one process, such as the executions of the
+ * fix goal for every module of a reactor build: the parsed .editorconfig files
+ * and one pool of worker threads. Runs that share a context may execute
+ * concurrently.
+ *
+ * <p>The worker threads are daemon threads that exit after a minute without work,
+ * so a context that is no longer used needs no explicit shutdown.
+ */
+public final class FixContext {
+
+  private static final long IDLE_SECONDS = 60;
+
+  private final EditorConfig editorConfig = new EditorConfig();
+  private final ThreadPoolExecutor workers;
+
+  /**
+   * Creates a context whose runs share the given number of worker threads.
+   *
+   * @param threads the number of threads that fix files concurrently across all runs
+   *     that share the context; 1 shares no threads, and each run uses the number
+   *     of threads in its own options
+   * @throws IllegalArgumentException if threads is less than 1
+   */
+  public FixContext(int threads) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("threads must be at least 1: " + threads);
+    }
+    if (threads == 1) {
+      this.workers = null;
+    } else {
+      this.workers = new ThreadPoolExecutor(threads, threads, IDLE_SECONDS, TimeUnit.SECONDS,
+          new LinkedBlockingQueue<>(), FixContext::newWorker);
+      workers.allowCoreThreadTimeOut(true);
+    }
+  }
+
+  static Thread newWorker(Runnable runnable) {
+    Thread thread = new Thread(runnable, "docfix-worker");
+    thread.setDaemon(true);
+    return thread;
+  }
+
+  EditorConfig editorConfig() {
+    return editorConfig;
+  }
+
+  /**
+   * Returns the shared worker threads, or null if each run has its own.
+   */
+  ExecutorService workers() {
+    return workers;
+  }
+}
@@ -0,0 +1,61 @@
+package com.elharo.docfix;
+
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The source directories of one module and the options to fix them with,
+ * for {@link DocFix#fixAll(Collection)}. After the jobs run, each one holds
+ * its own results.
+ */
+public final class FixJob {
+
+  private final Collection<Path> directories;
+  private final FixOptions options;
+  private List<Path> changedFiles = Collections.emptyList();
+  private FixStatistics statistics = new FixStatistics();
+
+  /**
+   * Creates a job.
+   *
+   * @param directories the directories to scan for Java source files
+   * @param options the settings for the job, including its cache file
+   */
+  public FixJob(Collection<Path> directories, FixOptions options) {
+    this.directories = directories;
+    this.options = options;
+  }
+
+  Collection<Path> getDirectories() {
+    return directories;
+  }
+
+  FixOptions getOptions() {
+    return options;
+  }
+
+  void finished(List<Path> changedFiles, FixStatistics statistics) {
+    this.changedFiles = changedFiles;
+    this.statistics = statistics;
+  }
+
+  /**
+   * Returns the files that changed, or would have in dry run or check mode.
+   *
+   * @return the changed files, sorted, or an empty list before the job runs
+   */
+  public List<Path> getChangedFiles() {
+    return changedFiles;
+  }
+
+  /**
+   * Returns the counts of what the job did.
+   *
+   * @return the statistics, all zero before the job runs
+   */
+  public FixStatistics getStatistics() {
+    return statistics;
+  }
+}
@@ -0,0 +1,399 @@
+package com.elharo.docfix;
+
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Settings for fixing a directory of Java source files.
+ * Setters return this object so calls can be chained.
+ */
+public final class FixOptions {
+
+  private boolean dryrun;
+  private Charset encoding;
+  private Path cacheFile;
+  private String since;
+  private Path resultCacheDirectory;
+  private Path journalFile;
+  private boolean resume;
+  private boolean staged;
+  private boolean updateWorkTree;
+  private int threads = 1;
+  private boolean check;
+  private boolean failFast;
+  private List<String> includes = Collections.emptyList();
+  private List<String> excludes = Collections.emptyList();
+  private FixContext context;
+  private FixStatistics statistics;
+  private Path outputDirectory;
+
+  /**
+   * Sets whether to only print what would change without modifying any files.
+   *
+   * @param dryrun true to print changes instead of making them
+   * @return these options
+   */
+  public FixOptions setDryrun(boolean dryrun) {
+    this.dryrun = dryrun;
+    return this;
+  }
+
+  /**
+   * Returns whether to only print what would change without modifying any files.
+   *
+   * @return true to print changes instead of making them
+   */
+  public boolean isDryrun() {
+    return dryrun;
+  }
+
+  /**
+   * Sets the character encoding of the source files.
+   *
+   * @param encoding the character encoding, or null to use the charset declared
+   *     in .editorconfig or else detect the encoding of each file
+   * @return these options
+   */
+  public FixOptions setEncoding(Charset encoding) {
+    this.encoding = encoding;
+    return this;
+  }
+
+  /**
+   * Returns the character encoding of the source files.
+   *
+   * @return the character encoding, or null to detect it
+   */
+  public Charset getEncoding() {
+    return encoding;
+  }
+
+  /**
+   * Sets the file that remembers which source files are already clean,
+   * so that later runs skip them without decoding or parsing them.
+   *
+   * @param cacheFile the cache file, or null to process every file
+   * @return these options
+   */
+  public FixOptions setCacheFile(Path cacheFile) {
+    this.cacheFile = cacheFile;
+    return this;
+  }
+
+  /**
+   * Returns the file that remembers which source files are already clean.
+   *
+   * @return the cache file, or null if there is none
+   */
+  public Path getCacheFile() {
+    return cacheFile;
+  }
+
+  /**
+   * Limits the run to the Java files that git reports as changed since a ref,
+   * plus untracked files, instead of walking the whole directory.
+   *
+   * @param since the commit, branch, or tag to compare against, or null to process every file
+   * @return these options
+   */
+  public FixOptions setSince(String since) {
+    this.since = since;
+    return this;
+  }
+
+  /**
+   * Returns the git ref that changed files are found relative to.
+   *
+   * @return the ref, or null to process every file
+   */
+  public String getSince() {
+    return since;
+  }
+
+  /**
+   * Sets a directory of fix results keyed by file contents, DocFix version, and
+   * configuration. The directory can be shared by many machines, for example on
+   * a mounted path used by every CI agent, so that each distinct file is fixed only once.
+   *
+   * @param resultCacheDirectory the shared cache directory, or null for none
+   * @return these options
+   */
+  public FixOptions setResultCacheDirectory(Path resultCacheDirectory) {
+    this.resultCacheDirectory = resultCacheDirectory;
+    return this;
+  }
+
+  /**
+   * Returns the directory of shared fix results.
+   *
+   * @return the shared cache directory, or null if there is none
+   */
+  public Path getResultCacheDirectory() {
+    return resultCacheDirectory;
+  }
+
+  /**
+   * Sets a journal that records each file as it is finished, so that a run
+   * that is interrupted can be resumed. The journal is deleted when the run completes.
+   *
+   * @param journalFile the journal file, or null for none
+   * @return these options
+   */
+  public FixOptions setJournalFile(Path journalFile) {
+    this.journalFile = journalFile;
+    return this;
+  }
+
+  /**
+   * Returns the journal that records each file as it is finished.
+   *
+   * @return the journal file, or null if there is none
+   */
+  public Path getJournalFile() {
+    return journalFile;
+  }
+
+  /**
+   * Sets whether to skip the files that the journal of an interrupted run
+   * records as finished, as long as they have not changed since.
+   *
+   * @param resume true to continue an interrupted run, false to start over
+   * @return these options
+   */
+  public FixOptions setResume(boolean resume) {
+    this.resume = resume;
+    return this;
+  }
+
+  /**
+   * Returns whether to continue an interrupted run from its journal.
+   *
+   * @return true to continue an interrupted run
+   */
+  public boolean isResume() {
+    return resume;
+  }
+
+  /**
+   * Sets whether to fix the staged contents of the Java files added or modified
+   * in the git index, writing the fixed contents back to the index, instead of
+   * fixing the files in the working tree.
+   *
+   * @param staged true to fix what is about to be committed
+   * @return these options
+   */
+  public FixOptions setStaged(boolean staged) {
+    this.staged = staged;
+    return this;
+  }
+
+  /**
+   * Returns whether to fix the staged contents of files instead of the working tree.
+   *
+   * @return true to fix what is about to be committed
+   */
+  public boolean isStaged() {
+    return staged;
+  }
+
+  /**
+   * Sets whether fixing staged contents also writes them to the working tree.
+   * A file with unstaged changes is left alone.
+   *
+   * @param updateWorkTree true to also update the working tree
+   * @return these options
+   */
+  public FixOptions setUpdateWorkTree(boolean updateWorkTree) {
+    this.updateWorkTree = updateWorkTree;
+    return this;
+  }
+
+  /**
+   * Returns whether fixing staged contents also writes them to the working tree.
+   *
+   * @return true to also update the working tree
+   */
+  public boolean isUpdateWorkTree() {
+    return updateWorkTree;
+  }
+
+  /**
+   * Sets the number of threads that fix files concurrently. The default is 1,
+   * which fixes every file on the calling thread.
+   *
+   * @param threads the number of threads, at least 1
+   * @return these options
+   * @throws IllegalArgumentException if threads is less than 1
+   */
+  public FixOptions setThreads(int threads) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("threads must be at least 1: " + threads);
+    }
+    this.threads = threads;
+    return this;
+  }
+
+  /**
+   * Returns the number of threads that fix files concurrently.
+   *
+   * @return the number of threads
+   */
+  public int getThreads() {
+    return threads;
+  }
+
+  /**
+   * Sets Ant-style patterns, relative to the source root, that select the Java
+   * files to process, for example {@code com/example/**}. By default every Java
+   * file is processed.
+   *
+   * @param includes the include patterns
+   * @return these options
+   */
+  public FixOptions setIncludes(Collection<String> includes) {
+    this.includes = List.copyOf(includes);
+    return this;
+  }
+
+  /**
+   * Returns the patterns that select the Java files to process.
+   *
+   * @return the include patterns, empty to process every Java file
+   */
+  public List<String> getIncludes() {
+    return includes;
+  }
+
+  /**
+   * Sets Ant-style patterns, relative to the source root, for Java files to skip,
+   * for example {@code **}{@code /generated/}. Excluded directories are not walked.
+   *
+   * @param excludes the exclude patterns
+   * @return these options
+   */
+  public FixOptions setExcludes(Collection<String> excludes) {
+    this.excludes = List.copyOf(excludes);
+    return this;
+  }
+
+  /**
+   * Returns the patterns for Java files to skip.
+   *
+   * @return the exclude patterns
+   */
+  public List<String> getExcludes() {
+    return excludes;
+  }
+
+  /**
+   * Sets check mode, in which files are fixed only in memory to find the ones that
+   * need fixes. Nothing is written or printed.
+   *
+   * @param check true to only check the files
+   * @return these options
+   */
+  public FixOptions setCheck(boolean check) {
+    this.check = check;
+    return this;
+  }
+
+  /**
+   * Returns whether files are only checked.
+   *
+   * @return true in check mode
+   */
+  public boolean isCheck() {
+    return check;
+  }
+
+  /**
+   * Sets whether check mode stops at the first file that needs fixes
+   * instead of finding all of them.
+   *
+   * @param failFast true to stop at the first violation
+   * @return these options
+   */
+  public FixOptions setFailFast(boolean failFast) {
+    this.failFast = failFast;
+    return this;
+  }
+
+  /**
+   * Returns whether check mode stops at the first file that needs fixes.
+   *
+   * @return true to stop at the first violation
+   */
+  public boolean isFailFast() {
+    return failFast;
+  }
+
+  /**
+   * Sets state to share with other runs in the same process, such as the
+   * executions for the other modules of a build. The context's worker threads
+   * replace the number of threads set in these options.
+   *
+   * @param context the shared state, or null for state private to the run
+   * @return these options
+   */
+  public FixOptions setContext(FixContext context) {
+    this.context = context;
+    return this;
+  }
+
+  /**
+   * Returns the state shared with other runs.
+   *
+   * @return the shared state, or null if the run has its own
+   */
+  public FixContext getContext() {
+    return context;
+  }
+
+  /**
+   * Sets where to count what the run does, such as the number of files
+   * scanned and changed and the bytes read and written.
+   *
+   * @param statistics the counts to add to, or null if no one needs them
+   * @return these options
+   */
+  public FixOptions setStatistics(FixStatistics statistics) {
+    this.statistics = statistics;
+    return this;
+  }
+
+  /**
+   * Returns where to count what the run does.
+   *
+   * @return the counts to add to, or null
+   */
+  public FixStatistics getStatistics() {
+    return statistics;
+  }
+
+  /**
+   * Writes the fixed files to a separate tree instead of replacing them, so the
+   * sources can be read-only. Each selected Java file goes to the same path
+   * relative to the output directory as it has relative to its source root.
+   * Files that need no changes are hard-linked where the file system allows,
+   * and otherwise copied without being decoded.
+   *
+   * @param outputDirectory the root of the output tree, or null to fix files in place
+   * @return these options
+   */
+  public FixOptions setOutputDirectory(Path outputDirectory) {
+    this.outputDirectory = outputDirectory;
+    return this;
+  }
+
+  /**
+   * Returns the root of the tree the fixed files are written to.
+   *
+   * @return the output directory, or null if files are fixed in place
+   */
+  public Path getOutputDirectory() {
+    return outputDirectory;
+  }
+}
@@ -0,0 +1,683 @@
+package com.elharo.docfix;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Configuration and caches shared by all the files processed in one run,
+ * so that later files reuse the work done for earlier ones.
+ * Closing the session saves the persistent cache, if there is one.
+ *
+ * <p>The caches are safe to share between threads, so a session with more than
+ * one thread fixes the files passed to {@link #submit} concurrently.
+ */
+final class FixSession implements Closeable {
+
+  private final Charset encoding;
+  private final boolean dryrun;
+  private final boolean check;
+  private final boolean failFast;
+  private final FixCache cache;
+  private final ResultCache results;
+  private final Journal journal;
+  // Identifies the DocFix version and configuration in shared result cache keys
+  private final String identity;
+  private final Path workingDirectory;
+  // Null when files are fixed in place
+  private final Path outputDirectory;
+  private final EncodingCache encodings = new EncodingCache();
+  private final EditorConfig editorConfig;
+  private final SourceFilter filter;
+  // Null when files are fixed on the calling thread
+  private final ExecutorService workers;
+  // False when the workers belong to a context shared with other sessions
+  private final boolean ownsWorkers;
+  // Only touched by the thread that submits files
+  private final List<Future<?>> submitted = new ArrayList<>();
+  // Files that changed, or would have in dry run or check mode
+  private final Queue<Path> changed = new ConcurrentLinkedQueue<>();
+  private volatile boolean stopped;
+  private final FixStatistics statistics;
+
+  /**
+   * Creates a session, loading the persistent cache if the options name one.
+   *
+   * @param options the settings for the run
+   * @throws IOException if the journal cannot be opened
+   */
+  FixSession(FixOptions options) throws IOException {
+    this(options, Paths.get(""));
+  }
+
+  /**
+   * Creates a session whose dry run output names files relative to the given directory.
+   *
+   * @param options the settings for the run
+   * @param workingDirectory the directory that printed paths are relative to
+   * @throws IOException if the journal cannot be opened
+   */
+  FixSession(FixOptions options, Path workingDirectory) throws IOException {
+    this.workingDirectory = workingDirectory.toAbsolutePath();
+    this.encoding = options.getEncoding();
+    this.check = options.isCheck();
+    this.dryrun = options.isDryrun() || check;
+    this.failFast = check && options.isFailFast();
+    this.outputDirectory = options.getOutputDirectory() == null
+        ? null : options.getOutputDirectory().toAbsolutePath().normalize();
+    Path cacheFile = options.getCacheFile();
+    this.cache = cacheFile == null ? null : FixCache.load(cacheFile, configuration());
+    this.identity = "version=" + DocFix.version() + ", " + configuration();
+    Path resultCacheDirectory = options.getResultCacheDirectory();
+    this.results = resultCacheDirectory == null ? null : new ResultCache(resultCacheDirectory);
+    Path journalFile = options.getJournalFile();
+    this.journal = journalFile == null ? null
+        : Journal.open(journalFile, configuration() + ", mode=" + mode(), options.isResume());
+    this.statistics = options.getStatistics() == null
+        ? new FixStatistics() : options.getStatistics();
+    this.filter = SourceFilter.compile(options.getIncludes(), options.getExcludes());
+    FixContext context = options.getContext();
+    this.editorConfig = context == null ? new EditorConfig() : context.editorConfig();
+    if (context != null && context.workers() != null) {
+      this.workers = context.workers();
+      this.ownsWorkers = false;
+    } else {
+      this.workers = options.getThreads() <= 1 ? null
+          : Executors.newFixedThreadPool(options.getThreads(), FixContext::newWorker);
+      this.ownsWorkers = true;
+    }
+  }
+
+  /**
+   * Names what the run does with the files, so that journals of runs that
+   * write files and runs that only look at them are never mixed.
+   */
+  private String mode() {
+    return check ? "check" : dryrun ? "dryrun" : "fix";
+  }
+
+  /**
+   * Describes the settings of this run that affect the fixed output.
+   */
+  private String configuration() {
+    return "encoding=" + (encoding == null ? "" : encoding.name());
+  }
+
+  /**
+   * Returns the detection cache, which also records the charsets used under each root.
+   *
+   * @return the detection cache
+   */
+  EncodingCache encodings() {
+    return encodings;
+  }
+
+  /**
+   * Returns the include and exclude patterns of the run, compiled.
+   *
+   * @return the filter that selects source files
+   */
+  SourceFilter filter() {
+    return filter;
+  }
+
+  /**
+   * Checks whether a file is selected by the include and exclude patterns.
+   *
+   * @param file the path to the Java source file
+   * @param root the source root containing the file, which the patterns are relative to
+   * @return true if the file should be processed
+   */
+  boolean isSelected(Path file, Path root) {
+    return !file.startsWith(root) || filter.includes(root.relativize(file));
+  }
+
+  /**
+   * Notes that every Java file under a root will be visited.
+   *
+   * @param root the source root about to be walked
+   */
+  void walking(Path root) {
+    if (cache != null) {
+      cache.walking(root);
+    }
+  }
+
+  /**
+   * Fixes the Javadoc comments in one file on a worker thread, or on the calling
+   * thread if the session has only one. Failures are reported on standard error.
+   * Call {@link #awaitSubmitted()} to wait until every submitted file is done.
+   *
+   * @param file the path to the Java source file
+   * @param root the source root containing the file, which groups files for detection
+   * @param attributes the attributes of the file, or null if they are not known
+   */
+  void submit(Path file, Path root, BasicFileAttributes attributes) {
+    if (stopped) {
+      return;
+    }
+    if (workers == null) {
+      fixReportingFailure(file, root, attributes);
+    } else {
+      submitted.add(workers.submit(() -> fixReportingFailure(file, root, attributes)));
+    }
+  }
+
+  private void fixReportingFailure(Path file, Path root, BasicFileAttributes attributes) {
+    if (stopped) {
+      return; // another thread found a violation while this file was queued
+    }
+    try {
+      fix(file, root, attributes);
+    } catch (IOException e) {
+      reportFailure(file, e);
+    }
+  }
+
+  /**
+   * Reports on standard error that a file could not be fixed, and counts it.
+   *
+   * @param file the file that failed
+   * @param e the reason
+   */
+  void reportFailure(Path file, IOException e) {
+    statistics.fileFailed();
+    System.err.println("Failed to fix: " + file + ", " + e.getMessage());
+  }
+
+  /**
+   * Waits until every file passed to {@link #submit} has been fixed.
+   *
+   * @throws IOException if the wait is interrupted
+   */
+  void awaitSubmitted() throws IOException {
+    Throwable failure = null;
+    try {
+      // Wait for every file even after a failure, so none is still being written on return
+      for (Future<?> future : submitted) {
+        try {
+          future.get();
+        } catch (ExecutionException ex) {
+          if (failure == null) {
+            failure = ex.getCause();
+          }
+        }
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while fixing files");
+    } finally {
+      submitted.clear();
+    }
+    if (failure instanceof Error) {
+      throw (Error) failure;
+    } else if (failure != null) {
+      throw (RuntimeException) failure; // fixReportingFailure handles every checked exception
+    }
+  }
+
+  /**
+   * Fixes the Javadoc comments in one file. The file is rewritten only if
+   * its contents change. In dry run mode the changes are printed instead.
+   *
+   * @param file the path to the Java source file
+   * @param root the source root containing the file, which groups files for detection
+   * @return true if the file changed, or would have in dry run mode
+   * @throws IOException if an I/O error occurs or the file is malformed in its encoding
+   */
+  boolean fix(Path file, Path root) throws IOException {
+    return fix(file, root, null);
+  }
+
+  /**
+   * Fixes the Javadoc comments in one file whose attributes were read
+   * while walking the directory. If the cache shows the attributes are unchanged
+   * since the file was last found clean, the file is not even read.
+   *
+   * @param file the path to the Java source file
+   * @param root the source root containing the file, which groups files for detection
+   * @param attributes the attributes of the file, or null if they are not known
+   * @return true if the file changed, or would have in dry run mode
+   * @throws IOException if an I/O error occurs or the file is malformed in its encoding
+   */
+  boolean fix(Path file, Path root, BasicFileAttributes attributes) throws IOException {
+    statistics.fileScanned();
+    if (file.getFileSystem() != FileSystems.getDefault()) {
+      // A rebuilt archive keeps the sizes and coarse timestamps of its entries,
+      // so an entry can only be trusted by its contents
+      attributes = null;
+    }
+    if (journal != null && attributes != null && journal.isDone(file, attributes)) {
+      statistics.fileSkipped();
+      return false;
+    }
+    boolean changed = fixFile(file, root, attributes);
+    if (changed) {
+      recordChange(file);
+    }
+    // A file that still needs fixes after a dry run or check is not done
+    if (journal != null && (!changed || !dryrun)) {
+      if (attributes == null || changed) {
+        attributes = Files.readAttributes(file, BasicFileAttributes.class);
+      }
+      journal.record(file, attributes);
+    }
+    return changed;
+  }
+
+  private boolean fixFile(Path file, Path root, BasicFileAttributes attributes)
+      throws IOException {
+    EditorConfig.Settings settings = editorConfig.settings(file);
+    String description = settings.toString();
+    if (cache != null && attributes != null && cache.isUnchanged(file, description, attributes)) {
+      statistics.fileSkipped();
+      return unchanged(file, root);
+    }
+
+    byte[] content = Files.readAllBytes(file);
+    statistics.read(content.length);
+    byte[] hash = null;
+    FixCache.Fingerprint fingerprint = null;
+    if (cache != null || results != null) {
+      // The shared result cache also needs the version and configuration in its key
+      hash = FixCache.hash(content, identity + ", " + description);
+    }
+    if (cache != null) {
+      fingerprint = FixCache.fingerprint(hash);
+      if (cache.isClean(file, fingerprint)) {
+        // Record the current metadata so the next run need not read the file
+        cache.markClean(file, fingerprint, description, attributes);
+        statistics.fileSkipped();
+        return unchanged(file, root);
+      }
+    }
+    if (results != null) {
+      ResultCache.Result result = results.get(hash);
+      if (result == ResultCache.Result.UNCHANGED) {
+        if (cache != null) {
+          cache.markClean(file, fingerprint, description, attributes);
+        }
+        statistics.fileSkipped();
+        return unchanged(file, root);
+      } else if (result != null && !dryrun) {
+        if (cache != null) {
+          cache.markDirty(file);
+        }
+        write(file, root, result.fixed);
+        return true;
+      } else if (result != null && check) {
+        return true; // known to need fixes, and check mode prints nothing
+      }
+    }
+
+    Source source = decode(content, settings, root);
+    StringBuilder fixed = fixText(source);
+    byte[] output = encode(fixed, source.charset);
+
+    if (Arrays.equals(content, output)) {
+      if (cache != null) {
+        cache.markClean(file, fingerprint, description, attributes);
+      }
+      if (results != null) {
+        results.putUnchanged(hash);
+      }
+      return unchanged(file, root);
+    }
+    if (results != null) {
+      results.putFixed(hash, output);
+    }
+    if (cache != null) {
+      cache.markDirty(file);
+    }
+    if (!dryrun) {
+      write(file, root, output);
+    } else if (!check) {
+      printChanges(file, source.text.toString(), fixed.toString());
+    }
+    return true;
+  }
+
+  /**
+   * Writes the fixed contents of a file, either over the file itself or to its
+   * place in the output directory.
+   */
+  private void write(Path file, Path root, byte[] fixed) throws IOException {
+    Files.write(outputDirectory == null ? file : prepareOutput(file, root), fixed);
+    statistics.written(fixed.length);
+  }
+
+  /**
+   * Gives a file that needs no changes its place in the output directory, if there
+   * is one. The file is hard-linked where the file system allows, and otherwise
+   * its bytes are copied as they are, without decoding them.
+   *
+   * @return false, since the file did not change
+   */
+  private boolean unchanged(Path file, Path root) throws IOException {
+    if (outputDirectory == null || dryrun) {
+      return false;
+    }
+    Path target = prepareOutput(file, root);
+    if (!link(file, target)) {
+      try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ);
+          FileChannel out = FileChannel.open(target,
+              StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+        long size = in.size();
+        for (long position = 0; position < size; ) {
+          position += in.transferTo(position, size - position, out);
+        }
+        statistics.written(size);
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Tries to hard-link a file, which is not possible across file systems,
+   * such as from an archive, or on some file systems at all.
+   *
+   * @return true if the link was created
+   */
+  private static boolean link(Path file, Path target) {
+    if (file.getFileSystem() != target.getFileSystem()) {
+      return false;
+    }
+    try {
+      Files.createLink(target, file);
+      return true;
+    } catch (UnsupportedOperationException | IOException ex) {
+      return false;
+    }
+  }
+
+  /**
+   * Returns the path in the output directory that mirrors a file, with its parent
+   * directories created and any earlier output removed. Removing the earlier output
+   * first matters because it may be a hard link to the source file.
+   *
+   * @throws IOException if the output would replace the source file itself
+   */
+  private Path prepareOutput(Path file, Path root) throws IOException {
+    Path relative = root.relativize(file);
+    if (relative.toString().isEmpty()) {
+      // A single file given as its own root
+      relative = file.getFileName();
+    }
+    Path target = outputDirectory.resolve(relative.toString());
+    if (target.equals(file.toAbsolutePath().normalize())) {
+      throw new IOException("The output directory contains the source file itself");
+    }
+    Files.createDirectories(target.getParent());
+    Files.deleteIfExists(target);
+    return target;
+  }
+
+  /**
+   * Returns the root of the tree the fixed files are written to.
+   *
+   * @return the output directory, or null if files are fixed in place
+   */
+  Path outputDirectory() {
+    return outputDirectory;
+  }
+
+  /**
+   * Fixes the Javadoc comments in file contents held in memory, such as a
+   * staged blob, without touching the file itself. In dry run mode the changes
+   * are printed as well.
+   *
+   * @param file the path of the Java source file, which determines its settings
+   * @param root the source root containing the file, which groups files for detection
+   * @param content the complete contents to fix
+   * @return the fixed contents, or null if they need no changes
+   * @throws IOException if the contents are malformed in their encoding
+   */
+  byte[] fixContent(Path file, Path root, byte[] content) throws IOException {
+    statistics.fileScanned();
+    statistics.read(content.length);
+    EditorConfig.Settings settings = editorConfig.settings(file);
+    byte[] hash = null;
+    if (results != null) {
+      hash = FixCache.hash(content, identity + ", " + settings);
+      ResultCache.Result result = results.get(hash);
+      if (result == ResultCache.Result.UNCHANGED) {
+        statistics.fileSkipped();
+        return null;
+      } else if (result != null && (!dryrun || check)) {
+        recordChange(file);
+        return result.fixed;
+      }
+    }
+
+    Source source = decode(content, settings, root);
+    StringBuilder fixed = fixText(source);
+    byte[] output = encode(fixed, source.charset);
+    if (Arrays.equals(content, output)) {
+      if (results != null) {
+        results.putUnchanged(hash);
+      }
+      return null;
+    }
+    if (results != null) {
+      results.putFixed(hash, output);
+    }
+    recordChange(file);
+    if (dryrun && !check) {
+      printChanges(file, source.text.toString(), fixed.toString());
+    }
+    return output;
+  }
+
+  private void recordChange(Path file) {
+    statistics.fileChanged();
+    changed.add(file);
+    if (failFast) {
+      stopped = true;
+    }
+  }
+
+  /**
+   * Returns the files that changed, or would have in dry run or check mode.
+   *
+   * @return the changed files, sorted
+   */
+  List<Path> changedFiles() {
+    List<Path> files = new ArrayList<>(changed);
+    Collections.sort(files);
+    return files;
+  }
+
+  /**
+   * Returns the counts of what this session did.
+   *
+   * @return the statistics, which are also those given in the options, if any
+   */
+  FixStatistics statistics() {
+    return statistics;
+  }
+
+  /**
+   * Returns whether a check that stops at the first violation has found one,
+   * so no more files need to be processed.
+   *
+   * @return true if the run should stop
+   */
+  boolean isStopped() {
+    return stopped;
+  }
+
+  /**
+   * Returns whether changes are only printed or checked, not made.
+   *
+   * @return true in dry run or check mode
+   */
+  boolean isDryrun() {
+    return dryrun;
+  }
+
+  /**
+   * Fixes decoded source, ending every line with the line ending the source uses.
+   */
+  private static StringBuilder fixText(Source source) {
+    String lineEnding = Strings.detectLineEnding(source.text);
+    StringBuilder fixed = new StringBuilder(source.text.length() + 64);
+    for (String line : DocFix.fixLines(source.text, lineEnding, source.indentation)) {
+      fixed.append(line).append(lineEnding);
+    }
+    return fixed;
+  }
+
+  /**
+   * Decodes a Java source file. An explicit encoding takes precedence,
+   * then a charset declared in .editorconfig. Otherwise the encoding is detected
+   * while decoding so the file is decoded only once.
+   *
+   * @param content the complete file contents
+   * @param settings the .editorconfig settings for the file
+   * @param root the source root containing the file, which groups files for detection
+   * @return the decoded file with its charset and declared indentation
+   * @throws IOException if the file is malformed in the encoding
+   */
+  private Source decode(byte[] content, EditorConfig.Settings settings, Path root)
+      throws IOException {
+    EncodingDetector.Decoded decoded;
+    if (encoding != null) {
+      decoded = EncodingDetector.decode(content, encoding);
+    } else if (settings.charset != null) {
+      decoded = EncodingDetector.decode(content, settings.charset);
+    } else {
+      decoded = encodings.decode(root, content);
+    }
+    return new Source(decoded.charset, decoded.text, settings.indentation);
+  }
+
+  /**
+   * Encodes text, failing rather than substituting for unmappable characters.
+   */
+  private static byte[] encode(CharSequence text, Charset charset) throws IOException {
+    ByteBuffer buffer = charset.newEncoder().encode(CharBuffer.wrap(text));
+    byte[] bytes = new byte[buffer.remaining()];
+    buffer.get(bytes);
+    return bytes;
+  }
+
+  /**
+   * Prints the name of the file and the lines that fixing it would change.
+   */
+  private void printChanges(Path file, String original, String fixed) {
+    // An entry of an archive is named by its path in the archive
+    Path relPath = file.getFileSystem() == workingDirectory.getFileSystem()
+        ? workingDirectory.relativize(file.toAbsolutePath()) : file;
+    StringBuilder sb = new StringBuilder();
+    sb.append(relPath).append(System.lineSeparator());
+    appendChangedLines(original, fixed, sb);
+    // One print call keeps the output of a file together
+    System.out.print(sb);
+  }
+
+  /**
+   * Appends only the changed lines between the original and fixed content, showing
+   * both old and new lines.
+   */
+  private static void appendChangedLines(String original, String fixed, StringBuilder sb) {
+    String[] origLines = original.split("\\r?\\n");
+    String[] fixedLines = fixed.split("\\r?\\n");
+    int max = Math.max(origLines.length, fixedLines.length);
+    for (int i = 0; i < max; i++) {
+      String origLine = i < origLines.length ? origLines[i] : "";
+      String fixedLine = i < fixedLines.length ? fixedLines[i] : "";
+      if (!origLine.equals(fixedLine)) {
+        if (!origLine.isEmpty()) {
+          sb.append(origLine).append(System.lineSeparator());
+        }
+        if (!fixedLine.isEmpty()) {
+          sb.append(fixedLine).append(System.lineSeparator());
+        }
+      }
+    }
+  }
+
+  /**
+   * Notes that every file of the run has been processed, so the journal,
+   * if there is one, is no longer needed.
+   */
+  void completed() {
+    if (journal != null && !stopped) {
+      journal.complete();
+    }
+  }
+
+  /**
+   * Waits for the files submitted by this session to finish, then saves the persistent
+   * cache and closes the journal, if there are any.
+   *
+   * @throws IOException if the cache or journal cannot be written
+   */
+  @Override
+  public void close() throws IOException {
+    // Interrupting the workers could cut a file off halfway through being written
+    try {
+      if (workers != null && ownsWorkers) {
+        workers.shutdown();
+        workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+      } else {
+        // Shared workers keep running for other sessions
+        for (Future<?> future : submitted) {
+          try {
+            future.get();
+          } catch (ExecutionException ex) {
+            // Only waiting here; awaitSubmitted reports failures
+          }
+        }
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+    try {
+      if (cache != null) {
+        cache.save();
+      }
+    } finally {
+      if (journal != null) {
+        journal.close();
+      }
+    }
+  }
+
+  /**
+   * The decoded contents of a source file and how to write them back.
+   */
+  static final class Source {
+
+    final Charset charset;
+    final CharBuffer text;
+    final Indentation indentation;
+
+    Source(Charset charset, CharBuffer text, Indentation indentation) {
+      this.charset = charset;
+      this.text = text;
+      this.indentation = indentation;
+    }
+  }
+}
@@ -0,0 +1,111 @@
+package com.elharo.docfix;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts what a run did, for summaries and build analytics. Pass one to
+ * {@link FixOptions#setStatistics(FixStatistics)}; the counts are safe to
+ * update from many worker threads and can be read once the run returns.
+ */
+public final class FixStatistics {
+
+  private final LongAdder files = new LongAdder();
+  private final LongAdder skipped = new LongAdder();
+  private final LongAdder changed = new LongAdder();
+  private final LongAdder failed = new LongAdder();
+  private final LongAdder bytesRead = new LongAdder();
+  private final LongAdder bytesWritten = new LongAdder();
+
+  void fileScanned() {
+    files.increment();
+  }
+
+  void fileSkipped() {
+    skipped.increment();
+  }
+
+  void fileChanged() {
+    changed.increment();
+  }
+
+  void fileFailed() {
+    failed.increment();
+  }
+
+  void read(long bytes) {
+    bytesRead.add(bytes);
+  }
+
+  void written(long bytes) {
+    bytesWritten.add(bytes);
+  }
+
+  /**
+   * Adds the counts of another run to these, such as to total the modules of a build.
+   *
+   * @param other the counts to add
+   */
+  public void add(FixStatistics other) {
+    files.add(other.getFiles());
+    skipped.add(other.getSkipped());
+    changed.add(other.getChanged());
+    failed.add(other.getFailed());
+    bytesRead.add(other.getBytesRead());
+    bytesWritten.add(other.getBytesWritten());
+  }
+
+  /**
+   * Returns the number of Java files examined.
+   *
+   * @return the number of files
+   */
+  public long getFiles() {
+    return files.sum();
+  }
+
+  /**
+   * Returns the number of files skipped without being parsed because the cache,
+   * result cache, or journal showed they need no work.
+   *
+   * @return the number of skipped files
+   */
+  public long getSkipped() {
+    return skipped.sum();
+  }
+
+  /**
+   * Returns the number of files that changed, or would have in dry run or check mode.
+   *
+   * @return the number of changed files
+   */
+  public long getChanged() {
+    return changed.sum();
+  }
+
+  /**
+   * Returns the number of files that could not be read, decoded, or written.
+   *
+   * @return the number of failed files
+   */
+  public long getFailed() {
+    return failed.sum();
+  }
+
+  /**
+   * Returns the number of bytes of source read.
+   *
+   * @return the bytes read
+   */
+  public long getBytesRead() {
+    return bytesRead.sum();
+  }
+
+  /**
+   * Returns the number of bytes of fixed source written.
+   *
+   * @return the bytes written
+   */
+  public long getBytesWritten() {
+    return bytesWritten.sum();
+  }
+}
@@ -0,0 +1,100 @@
+package com.elharo.docfix;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Asks the local git executable which Java files changed, so that a run on a
+ * feature branch processes only the files the branch touched instead of walking
+ * the whole tree.
+ */
+final class GitChanges {
+
+  private GitChanges() {
+  }
+
+  /**
+   * Lists the Java files under a directory that differ from the given ref in the
+   * working tree, whether staged or not, plus untracked files that are not ignored.
+   * Deleted files are not included.
+   *
+   * @param directory a directory inside a git working tree
+   * @param ref the commit, branch, or tag to compare against
+   * @return the changed Java files that still exist
+   * @throws IOException if git cannot be run or reports an error
+   * @throws IllegalArgumentException if the ref starts with -, which git would read as an option
+   */
+  static List<Path> changedJavaFiles(Path directory, String ref) throws IOException {
+    if (ref.startsWith("-")) {
+      throw new IllegalArgumentException("Invalid git ref: " + ref);
+    }
+    // --relative limits the diff to the directory and prints paths relative to it,
+    // as ls-files does by default. -z keeps unusual file names unquoted.
+    Set<String> names = new LinkedHashSet<>();
+    names.addAll(git(directory,
+        "diff", "--name-only", "-z", "--relative", "--diff-filter=d", ref, "--"));
+    names.addAll(git(directory, "ls-files", "--others", "--exclude-standard", "-z"));
+
+    List<Path> files = new ArrayList<>();
+    for (String name : names) {
+      Path file = directory.resolve(name);
+      if (name.endsWith(".java") && Files.isRegularFile(file, LinkOption.NOFOLLOW_LINKS)) {
+        files.add(file);
+      }
+    }
+    return files;
+  }
+
+  /**
+   * Runs git in the directory and splits its NUL terminated output.
+   *
+   * @param directory the directory to run git in
+   * @param arguments the git command and its arguments
+   * @return the NUL terminated fields git printed
+   * @throws IOException if git cannot be run or exits with an error
+   */
+  static List<String> git(Path directory, String... arguments) throws IOException {
+    List<String> command = new ArrayList<>();
+    command.add("git");
+    Collections.addAll(command, arguments);
+    Process process = new ProcessBuilder(command)
+        .directory(directory.toFile())
+        .redirectError(ProcessBuilder.Redirect.INHERIT)
+        .start();
+    byte[] output;
+    try (InputStream in = process.getInputStream()) {
+      output = in.readAllBytes();
+    }
+    try {
+      int status = process.waitFor();
+      if (status != 0) {
+        throw new IOException("git " + arguments[0] + " failed with exit status " + status);
+      }
+    } catch (InterruptedException ex) {
+      process.destroy();
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for git", ex);
+    }
+
+    List<String> names = new ArrayList<>();
+    int start = 0;
+    for (int i = 0; i < output.length; i++) {
+      if (output[i] == 0) {
+        if (i > start) {
+          names.add(new String(output, start, i - start, StandardCharsets.UTF_8));
+        }
+        start = i + 1;
+      }
+    }
+    return names;
+  }
+}
@@ -0,0 +1,227 @@
+package com.elharo.docfix;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reads and writes the staged contents of Java files through git plumbing
+ * commands, so that a pre-commit hook can fix exactly what is about to be
+ * committed without walking the working tree.
+ */
+final class GitIndex {
+
+  private GitIndex() {
+  }
+
+  /**
+   * Lists the regular Java files under a directory that are added or modified
+   * in the index relative to HEAD.
+   *
+   * @param directory a directory inside a git working tree
+   * @return the staged files, with paths relative to the directory and to the top
+   *     of the working tree
+   * @throws IOException if git cannot be run or reports an error
+   */
+  static List<StagedFile> stagedJavaFiles(Path directory) throws IOException {
+    String prefix = prefix(directory);
+    // Each entry is ":oldmode newmode oldblob newblob status" followed by the path
+    List<String> fields = GitChanges.git(directory, "diff", "--cached", "--raw", "-z",
+        "--no-abbrev", "--no-renames", "--relative", "--diff-filter=AM");
+    List<StagedFile> files = new ArrayList<>();
+    for (int i = 0; i + 1 < fields.size(); i += 2) {
+      String[] meta = fields.get(i).split(" ");
+      String path = fields.get(i + 1);
+      if (meta.length < 4 || !path.endsWith(".java")) {
+        continue;
+      }
+      String mode = meta[1];
+      if ("100644".equals(mode) || "100755".equals(mode)) {
+        files.add(new StagedFile(mode, meta[3], path, prefix + path));
+      }
+    }
+    return files;
+  }
+
+  /**
+   * Returns the path of a directory relative to the top of its working tree,
+   * ending in / unless it is the top itself.
+   */
+  private static String prefix(Path directory) throws IOException {
+    Process process = start(directory, "rev-parse", "--show-prefix");
+    String prefix;
+    try (InputStream out = process.getInputStream()) {
+      prefix = new String(out.readAllBytes(), StandardCharsets.UTF_8);
+    }
+    waitFor(process, "rev-parse");
+    // Strip only the line ending, since a directory name may end in white space
+    return prefix.endsWith("\n") ? prefix.substring(0, prefix.length() - 1) : prefix;
+  }
+
+  /**
+   * Stores contents in the object database without applying any filters.
+   *
+   * @param directory a directory inside the git working tree
+   * @param content the blob contents
+   * @return the object id of the blob
+   * @throws IOException if git cannot be run or reports an error
+   */
+  static String writeBlob(Path directory, byte[] content) throws IOException {
+    Process process = start(directory, "hash-object", "-w", "--no-filters", "--stdin");
+    try (OutputStream in = process.getOutputStream()) {
+      in.write(content);
+    }
+    String id;
+    try (InputStream out = process.getInputStream()) {
+      id = new String(out.readAllBytes(), StandardCharsets.US_ASCII).trim();
+    }
+    waitFor(process, "hash-object");
+    return id;
+  }
+
+  /**
+   * Points index entries at new blobs. The index is addressed by each entry's path
+   * relative to the top of the working tree, which is how --index-info reads paths
+   * wherever git runs.
+   *
+   * @param directory a directory inside the git working tree
+   * @param files the entries to update
+   * @throws IOException if git cannot be run or reports an error
+   */
+  static void updateIndex(Path directory, List<StagedFile> files)
+      throws IOException {
+    if (files.isEmpty()) {
+      return;
+    }
+    Process process = start(directory, "update-index", "-z", "--index-info");
+    try (OutputStream in = process.getOutputStream()) {
+      for (StagedFile file : files) {
+        String line = file.mode + " " + file.blob + "\t" + file.indexPath + "\0";
+        in.write(line.getBytes(StandardCharsets.UTF_8));
+      }
+    }
+    waitFor(process, "update-index");
+  }
+
+  private static Process start(Path directory, String... arguments)
+      throws IOException {
+    List<String> command = new ArrayList<>();
+    command.add("git");
+    Collections.addAll(command, arguments);
+    return new ProcessBuilder(command)
+        .directory(directory.toFile())
+        .redirectError(ProcessBuilder.Redirect.INHERIT)
+        .start();
+  }
+
+  private static void waitFor(Process process, String command) throws IOException {
+    try {
+      int status = process.waitFor();
+      if (status != 0) {
+        throw new IOException("git " + command + " failed with exit status " + status);
+      }
+    } catch (InterruptedException ex) {
+      process.destroy();
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for git", ex);
+    }
+  }
+
+  /**
+   * One staged file: its mode, the object id of its staged contents, its path
+   * relative to the directory it was listed from, and its path in the index.
+   */
+  static final class StagedFile {
+
+    final String mode;
+    final String blob;
+    final String path;
+    final String indexPath;
+
+    StagedFile(String mode, String blob, String path, String indexPath) {
+      this.mode = mode;
+      this.blob = blob;
+      this.path = path;
+      this.indexPath = indexPath;
+    }
+  }
+
+  /**
+   * Streams blob contents out of one long-running {@code git cat-file --batch}
+   * process instead of starting a process per file.
+   */
+  static final class BlobReader implements Closeable {
+
+    private final Process process;
+    private final OutputStream requests;
+    private final InputStream responses;
+
+    /**
+     * Starts the cat-file process.
+     *
+     * @param directory a directory inside the git working tree
+     * @throws IOException if git cannot be run
+     */
+    BlobReader(Path directory) throws IOException {
+      this.process = start(directory, "cat-file", "--batch");
+      this.requests = process.getOutputStream();
+      this.responses = new BufferedInputStream(process.getInputStream());
+    }
+
+    /**
+     * Reads the contents of one blob.
+     *
+     * @param blob the object id
+     * @return the contents
+     * @throws IOException if the object is missing or git fails
+     */
+    byte[] read(String blob) throws IOException {
+      requests.write((blob + "\n").getBytes(StandardCharsets.US_ASCII));
+      requests.flush();
+
+      // The header is "<id> blob <size>", or "<id> missing"
+      String header = readLine();
+      String[] parts = header.split(" ");
+      if (parts.length != 3 || !"blob".equals(parts[1])) {
+        throw new IOException("git cat-file cannot read " + blob + ": " + header);
+      }
+      int size;
+      try {
+        size = Integer.parseInt(parts[2]);
+      } catch (NumberFormatException ex) {
+        throw new IOException("Malformed git cat-file header: " + header, ex);
+      }
+      byte[] content = responses.readNBytes(size);
+      if (content.length != size || responses.read() != '\n') {
+        throw new IOException("git cat-file ended early while reading " + blob);
+      }
+      return content;
+    }
+
+    private String readLine() throws IOException {
+      ByteArrayOutputStream line = new ByteArrayOutputStream();
+      for (int b = responses.read(); b != '\n'; b = responses.read()) {
+        if (b == -1) {
+          throw new IOException("git cat-file ended unexpectedly");
+        }
+        line.write(b);
+      }
+      return new String(line.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+      requests.close();
+      responses.close();
+      waitFor(process, "cat-file");
+    }
+  }
+}
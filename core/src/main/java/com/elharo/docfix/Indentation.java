@@ -0,0 +1,61 @@
+package com.elharo.docfix;
+
+/**
+ * How leading white space is measured and written: the number of columns
+ * a tab stands for and whether comments are indented with tabs or spaces.
+ */
+final class Indentation {
+
+  /**
+   * Four column tabs and space indentation, used when nothing else is declared.
+   */
+  static final Indentation DEFAULT = new Indentation(4, false);
+
+  final int tabWidth;
+  final boolean useTabs;
+
+  Indentation(int tabWidth, boolean useTabs) {
+    if (tabWidth < 1) {
+      throw new IllegalArgumentException("Tab width must be positive: " + tabWidth);
+    }
+    this.tabWidth = tabWidth;
+    this.useTabs = useTabs;
+  }
+
+  /**
+   * Measures the leading white space of a line in columns.
+   *
+   * @param line the line to measure
+   * @return the indentation in columns
+   */
+  int measure(String line) {
+    return Strings.findIndent(line, tabWidth);
+  }
+
+  /**
+   * Creates the white space that indents a line by the given number of columns.
+   *
+   * @param columns the indentation in columns
+   * @return tabs followed by any remaining spaces if tabs are used, otherwise spaces
+   */
+  String whitespace(int columns) {
+    if (!useTabs) {
+      return " ".repeat(columns);
+    }
+    return "\t".repeat(columns / tabWidth) + " ".repeat(columns % tabWidth);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (!(o instanceof Indentation)) {
+      return false;
+    }
+    Indentation other = (Indentation) o;
+    return tabWidth == other.tabWidth && useTabs == other.useTabs;
+  }
+
+  @Override
+  public int hashCode() {
+    return useTabs ? -tabWidth : tabWidth;
+  }
+}
@@ -0,0 +1,170 @@
+package com.elharo.docfix;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Append-only record of the files a run has finished, so that a run killed
+ * partway through a large tree can be resumed where it stopped. Each line holds
+ * the size and modification time a file had once it was done, and its path.
+ * A resumed run skips a file whose metadata still matches its line.
+ *
+ * <p>Lines are written and forced to disk in batches, so a crash loses at most
+ * the last batch, whose files are simply processed again. A torn final line is
+ * ignored. The journal is deleted when a run completes.
+ */
+final class Journal implements Closeable {
+
+  private static final String HEADER = "docfix-journal 1 ";
+  private static final int BATCH_SIZE = 256;
+  private static final long BATCH_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  private final Path file;
+  private final Map<String, String> done;
+  private final FileChannel channel;
+  private final StringBuilder pending = new StringBuilder();
+  private int pendingCount;
+  private long lastFlush = System.nanoTime();
+  private boolean completed;
+
+  private Journal(Path file, Map<String, String> done, FileChannel channel) {
+    this.file = file;
+    this.done = done;
+    this.channel = channel;
+  }
+
+  /**
+   * Opens a journal.
+   *
+   * @param file the journal file
+   * @param configuration the settings of this run that affect the fixed output
+   * @param resume true to keep the files already recorded by an interrupted run
+   *     with the same configuration, false to start a new journal
+   * @return the journal
+   * @throws IOException if the journal cannot be read or created
+   */
+  static Journal open(Path file, String configuration, boolean resume) throws IOException {
+    Map<String, String> done = new HashMap<>();
+    boolean append = resume && Files.isRegularFile(file) && read(file, configuration, done);
+    Path parent = file.toAbsolutePath().getParent();
+    Files.createDirectories(parent);
+    FileChannel channel;
+    if (append) {
+      channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    } else {
+      done.clear();
+      channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+          StandardOpenOption.TRUNCATE_EXISTING);
+    }
+    Journal journal = new Journal(file, done, channel);
+    if (!append) {
+      journal.pending.append(HEADER).append(configuration).append('\n');
+      journal.flush();
+    }
+    return journal;
+  }
+
+  /**
+   * Reads the lines of an existing journal.
+   *
+   * @return false if the journal was written with a different configuration
+   */
+  private static boolean read(Path file, String configuration, Map<String, String> done)
+      throws IOException {
+    String content = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    int end = content.indexOf('\n');
+    if (end == -1 || !content.substring(0, end).equals(HEADER + configuration)) {
+      return false;
+    }
+    // Only complete lines count; a crash can leave the last one torn
+    for (int start = end + 1; (end = content.indexOf('\n', start)) != -1; start = end + 1) {
+      String line = content.substring(start, end);
+      int firstTab = line.indexOf('\t');
+      int secondTab = firstTab == -1 ? -1 : line.indexOf('\t', firstTab + 1);
+      if (secondTab != -1) {
+        done.put(line.substring(secondTab + 1), line.substring(0, secondTab));
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Checks whether an interrupted run finished a file that has not changed since.
+   *
+   * @param source the source file
+   * @param attributes the current attributes of the file
+   * @return true if the file can be skipped
+   */
+  synchronized boolean isDone(Path source, BasicFileAttributes attributes) {
+    return stamp(attributes).equals(done.get(key(source)));
+  }
+
+  /**
+   * Records that a file is finished.
+   *
+   * @param source the source file
+   * @param attributes the attributes of the file once it was finished
+   * @throws IOException if the journal cannot be written
+   */
+  synchronized void record(Path source, BasicFileAttributes attributes) throws IOException {
+    String key = key(source);
+    if (key.indexOf('\n') != -1) {
+      return; // cannot be represented; the file is simply processed again
+    }
+    pending.append(stamp(attributes)).append('\t').append(key).append('\n');
+    pendingCount++;
+    if (pendingCount >= BATCH_SIZE || System.nanoTime() - lastFlush >= BATCH_NANOS) {
+      flush();
+    }
+  }
+
+  private void flush() throws IOException {
+    ByteBuffer bytes = StandardCharsets.UTF_8.encode(pending.toString());
+    while (bytes.hasRemaining()) {
+      channel.write(bytes);
+    }
+    channel.force(false);
+    pending.setLength(0);
+    pendingCount = 0;
+    lastFlush = System.nanoTime();
+  }
+
+  /**
+   * Marks the run as complete, so the journal is deleted when it is closed.
+   */
+  synchronized void complete() {
+    completed = true;
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    try {
+      if (!completed && pendingCount > 0) {
+        flush();
+      }
+    } finally {
+      channel.close();
+    }
+    if (completed) {
+      Files.deleteIfExists(file);
+    }
+  }
+
+  private static String key(Path path) {
+    return path.toAbsolutePath().normalize().toString();
+  }
+
+  private static String stamp(BasicFileAttributes attributes) {
+    return attributes.size() + "\t" + attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+  }
+}
@@ -0,0 +1,128 @@
+package com.elharo.docfix;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+/**
+ * Content-addressed store of fix results that many machines can share, for
+ * example on a mounted network path used by every CI agent. An entry is keyed by
+ * the hash of the DocFix version, the run configuration, the per-file settings,
+ * and the file contents, and holds either a marker saying the file needs no
+ * changes or the complete fixed file.
+ *
+ * <p>Entries never change once written, so concurrent writers need no locking:
+ * each entry is written to a temporary file and moved into place, and two
+ * agents writing the same entry write the same bytes. Unreadable or malformed
+ * entries are treated as misses.
+ */
+final class ResultCache {
+
+  private static final byte UNCHANGED = 'U';
+  private static final byte FIXED = 'F';
+
+  private final Path directory;
+
+  /**
+   * Creates a cache stored in the given directory, which is created when
+   * the first entry is written.
+   *
+   * @param directory the shared cache directory
+   */
+  ResultCache(Path directory) {
+    this.directory = directory;
+  }
+
+  /**
+   * Looks up the result for a key.
+   *
+   * @param key the hash of the version, configuration, settings, and contents
+   * @return the result, or null if it is not cached
+   */
+  Result get(byte[] key) {
+    byte[] entry;
+    try {
+      entry = Files.readAllBytes(path(key));
+    } catch (IOException ex) {
+      return null; // missing, or the shared cache is unavailable, so just do the work
+    }
+    if (entry.length == 1 && entry[0] == UNCHANGED) {
+      return Result.UNCHANGED;
+    } else if (entry.length > 0 && entry[0] == FIXED) {
+      return new Result(Arrays.copyOfRange(entry, 1, entry.length));
+    }
+    return null;
+  }
+
+  /**
+   * Records that the file with this key needs no changes.
+   *
+   * @param key the hash of the version, configuration, settings, and contents
+   */
+  void putUnchanged(byte[] key) {
+    put(key, new byte[] {UNCHANGED});
+  }
+
+  /**
+   * Records the fixed contents of the file with this key.
+   *
+   * @param key the hash of the version, configuration, settings, and contents
+   * @param fixed the complete fixed file, encoded as it is written to disk
+   */
+  void putFixed(byte[] key, byte[] fixed) {
+    byte[] entry = new byte[fixed.length + 1];
+    entry[0] = FIXED;
+    System.arraycopy(fixed, 0, entry, 1, fixed.length);
+    put(key, entry);
+  }
+
+  private void put(byte[] key, byte[] entry) {
+    Path path = path(key);
+    if (Files.exists(path)) {
+      return;
+    }
+    try {
+      Path parent = path.getParent();
+      Files.createDirectories(parent);
+      Path temp = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+      try {
+        Files.write(temp, entry);
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } finally {
+        Files.deleteIfExists(temp);
+      }
+    } catch (IOException ex) {
+      // Failing to share a result only costs other machines some work
+    }
+  }
+
+  /**
+   * Entries are spread over 256 subdirectories named by the first byte of the key.
+   */
+  private Path path(byte[] key) {
+    StringBuilder hex = new StringBuilder(key.length * 2);
+    for (byte b : key) {
+      hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+    }
+    return directory.resolve(hex.substring(0, 2)).resolve(hex.substring(2));
+  }
+
+  /**
+   * A cached fix result.
+   */
+  static final class Result {
+
+    static final Result UNCHANGED = new Result(null);
+
+    /**
+     * The complete fixed file, or null if the file needs no changes.
+     */
+    final byte[] fixed;
+
+    private Result(byte[] fixed) {
+      this.fixed = fixed;
+    }
+  }
+}
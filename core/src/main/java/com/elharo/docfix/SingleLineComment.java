@@ -9,7 +9,7 @@ import java.util.Collections;
  */
 class SingleLineComment extends DocComment {
 
-  SingleLineComment(Kind kind, String description, int indent) {
+  SingleLineComment(Kind kind, String description, String indent) {
     super(kind, description, Collections.emptyList(), indent);
   }
 
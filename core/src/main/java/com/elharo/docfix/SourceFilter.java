@@ -0,0 +1,214 @@
+package com.elharo.docfix;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Selects source files by Ant-style include and exclude patterns, matched against
+ * the path of a file relative to its source root with / as the separator.
+ * In a pattern, {@code **} matches any number of directories, {@code *} matches
+ * any characters within one name, and {@code ?} matches one character.
+ * A pattern ending in / is short for one ending in {@code /**}. A file is selected
+ * if it matches some include pattern, or there are none, and no exclude pattern.
+ *
+ * <p>The patterns are compiled once. A walk can also ask whether a directory
+ * can be skipped because no file beneath it could be selected, so excluded
+ * subtrees are never listed.
+ */
+final class SourceFilter {
+
+  static final SourceFilter ALL =
+      new SourceFilter(Collections.emptyList(), Collections.emptyList());
+
+  private static final String ANY_DIRECTORIES = "**";
+
+  private final List<Segment[]> includes;
+  private final List<Segment[]> excludes;
+
+  private SourceFilter(List<Segment[]> includes, List<Segment[]> excludes) {
+    this.includes = includes;
+    this.excludes = excludes;
+  }
+
+  /**
+   * Compiles include and exclude patterns.
+   *
+   * @param includes the include patterns; if empty, every file is included
+   * @param excludes the exclude patterns
+   * @return the filter
+   */
+  static SourceFilter compile(Collection<String> includes, Collection<String> excludes) {
+    if (includes.isEmpty() && excludes.isEmpty()) {
+      return ALL;
+    }
+    return new SourceFilter(compileAll(includes), compileAll(excludes));
+  }
+
+  private static List<Segment[]> compileAll(Collection<String> patterns) {
+    List<Segment[]> compiled = new ArrayList<>();
+    for (String pattern : patterns) {
+      String normalized = pattern.trim().replace('\\', '/');
+      if (normalized.isEmpty()) {
+        continue;
+      }
+      if (normalized.endsWith("/")) {
+        normalized += ANY_DIRECTORIES;
+      }
+      List<Segment> segments = new ArrayList<>();
+      for (String name : normalized.split("/")) {
+        if (!name.isEmpty()) {
+          segments.add(new Segment(name));
+        }
+      }
+      compiled.add(segments.toArray(new Segment[0]));
+    }
+    return compiled;
+  }
+
+  /**
+   * Checks whether a file is selected.
+   *
+   * @param relative the path of the file relative to its source root
+   * @return true if the file is included and not excluded
+   */
+  boolean includes(Path relative) {
+    if (this == ALL) {
+      return true;
+    }
+    String[] names = names(relative);
+    return (includes.isEmpty() || matchesAny(includes, names)) && !matchesAny(excludes, names);
+  }
+
+  /**
+   * Checks whether no file beneath a directory can be selected, either because
+   * an exclude pattern covers the whole directory or because no include
+   * pattern reaches into it.
+   *
+   * @param relative the path of the directory relative to its source root
+   * @return true if the directory need not be walked
+   */
+  boolean prunes(Path relative) {
+    if (this == ALL) {
+      return false;
+    }
+    String[] names = names(relative);
+    for (Segment[] exclude : excludes) {
+      // A pattern ending in ** that matches the directory matches everything beneath it too
+      int last = exclude.length - 1;
+      if (last >= 0 && exclude[last].isAnyDirectories()
+          && matches(exclude, 0, names, 0)) {
+        return true;
+      }
+    }
+    if (includes.isEmpty()) {
+      return false;
+    }
+    for (Segment[] include : includes) {
+      if (reachesBelow(include, 0, names, 0)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static String[] names(Path relative) {
+    String[] names = new String[relative.getNameCount()];
+    for (int i = 0; i < names.length; i++) {
+      names[i] = relative.getName(i).toString();
+    }
+    return names;
+  }
+
+  private static boolean matchesAny(List<Segment[]> patterns, String[] names) {
+    for (Segment[] pattern : patterns) {
+      if (matches(pattern, 0, names, 0)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Checks whether the segments of a pattern from index p on match the names from index n on.
+   */
+  private static boolean matches(Segment[] pattern, int p, String[] names, int n) {
+    if (p == pattern.length) {
+      return n == names.length;
+    }
+    if (pattern[p].isAnyDirectories()) {
+      for (int next = n; next <= names.length; next++) {
+        if (matches(pattern, p + 1, names, next)) {
+          return true;
+        }
+      }
+      return false;
+    }
+    return n < names.length && pattern[p].matches(names[n])
+        && matches(pattern, p + 1, names, n + 1);
+  }
+
+  /**
+   * Checks whether a pattern could match a file beneath the directory with the given names.
+   */
+  private static boolean reachesBelow(Segment[] pattern, int p, String[] names, int n) {
+    if (n == names.length) {
+      return p < pattern.length;
+    }
+    if (p == pattern.length) {
+      return false;
+    }
+    if (pattern[p].isAnyDirectories()) {
+      return true;
+    }
+    return pattern[p].matches(names[n]) && reachesBelow(pattern, p + 1, names, n + 1);
+  }
+
+  /**
+   * One name of a pattern, which is either ** or a glob compiled to a regular expression.
+   */
+  private static final class Segment {
+
+    // Null for ** and for names without wildcards
+    private final Pattern glob;
+    private final String name;
+
+    Segment(String name) {
+      this.name = name;
+      this.glob = name.equals(ANY_DIRECTORIES) || (name.indexOf('*') < 0 && name.indexOf('?') < 0)
+          ? null : Pattern.compile(toRegex(name));
+    }
+
+    boolean isAnyDirectories() {
+      return name.equals(ANY_DIRECTORIES);
+    }
+
+    boolean matches(String candidate) {
+      return glob == null ? name.equals(candidate) : glob.matcher(candidate).matches();
+    }
+
+    private static String toRegex(String name) {
+      StringBuilder regex = new StringBuilder();
+      StringBuilder literal = new StringBuilder();
+      for (int i = 0; i < name.length(); i++) {
+        char c = name.charAt(i);
+        if (c == '*' || c == '?') {
+          if (literal.length() > 0) {
+            regex.append(Pattern.quote(literal.toString()));
+            literal.setLength(0);
+          }
+          regex.append(c == '*' ? ".*" : ".");
+        } else {
+          literal.append(c);
+        }
+      }
+      if (literal.length() > 0) {
+        regex.append(Pattern.quote(literal.toString()));
+      }
+      return regex.toString();
+    }
+  }
+}
@@ -13,12 +13,25 @@ final class Strings {
    * @return the indentation in spaces
    */
   static int findIndent(String s) {
+    return findIndent(s, 4);
+  }
+
+  /**
+   * Finds the number of spaces at the beginning of a string,
+   * counting each tab as the given number of spaces.
+   *
+   * @param s the string to analyze
+   * @param tabWidth the number of spaces a tab stands for
+   * @return the indentation in spaces
+   */
+  static int findIndent(String s, int tabWidth) {
     int indent = 0;
-    for (char c : s.toCharArray()) {
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
       if (c == ' ') {
         indent++;
       } else if (c == '\t') {
-        indent += 4; // Assuming tab is equivalent to 4 spaces
+        indent += tabWidth;
       } else {
         break; // Stop at first non-space character
       }
@@ -72,12 +85,16 @@ final class Strings {
    * @param code the source code to analyze
    * @return the detected line ending as a string
    */
-  static String detectLineEnding(String code) {
+  static String detectLineEnding(CharSequence code) {
     String lineEnding = "\n";
-    if (code.contains("\r\n")) {
-      lineEnding = "\r\n";
-    } else if (code.contains("\r")) {
-      lineEnding = "\r";
+    int length = code.length();
+    for (int i = 0; i < length; i++) {
+      if (code.charAt(i) == '\r') {
+        if (i + 1 < length && code.charAt(i + 1) == '\n') {
+          return "\r\n";
+        }
+        lineEnding = "\r";
+      }
     }
     return lineEnding;
   }
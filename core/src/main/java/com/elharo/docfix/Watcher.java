@@ -0,0 +1,212 @@
+package com.elharo.docfix;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches a directory tree and fixes Java files as they are saved.
+ * Editors often write a file several times in quick succession, so events are
+ * collected until the tree has been quiet for a short while and each file is
+ * then fixed once. Writes made by the watcher itself are recognized by the
+ * size and modification time they left behind and are not fixed again.
+ */
+final class Watcher implements Closeable {
+
+  static final long DEFAULT_DEBOUNCE_MILLIS = 200;
+
+  private final Path root;
+  private final FixSession session;
+  private final long debounceMillis;
+  private final WatchService watchService;
+  private final Map<WatchKey, Path> directories = new HashMap<>();
+  // Size and modification time of the files this watcher wrote
+  private final Map<Path, String> ownWrites = new HashMap<>();
+
+  /**
+   * Starts watching every directory under the root.
+   *
+   * @param root the directory tree to watch
+   * @param session the configuration and caches used to fix files
+   * @param debounceMillis how long the tree must be quiet before files are fixed
+   * @throws IOException if the tree cannot be registered
+   */
+  Watcher(Path root, FixSession session, long debounceMillis) throws IOException {
+    this.root = root;
+    this.session = session;
+    this.debounceMillis = debounceMillis;
+    this.watchService = FileSystems.getDefault().newWatchService();
+    register(root);
+  }
+
+  private void register(Path directory) throws IOException {
+    Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes)
+          throws IOException {
+        if (isPruned(dir)) {
+          return FileVisitResult.SKIP_SUBTREE;
+        }
+        WatchKey key = dir.register(watchService,
+            StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        directories.put(key, dir);
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+
+  /**
+   * Fixes files as they change until the thread is interrupted.
+   *
+   * @throws IOException if a new directory cannot be registered
+   * @throws InterruptedException if the thread is interrupted
+   */
+  void run() throws IOException, InterruptedException {
+    while (true) {
+      processBatch(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * Waits for changes, collects events until the tree is quiet, and fixes
+   * the Java files that changed.
+   *
+   * @param timeout how long to wait for the first event
+   * @param unit the unit of the timeout
+   * @return the number of Java files checked, not counting the watcher's own writes
+   * @throws IOException if a new directory cannot be registered
+   * @throws InterruptedException if the thread is interrupted
+   */
+  // visible for testing
+  int processBatch(long timeout, TimeUnit unit) throws IOException, InterruptedException {
+    WatchKey key = watchService.poll(timeout, unit);
+    if (key == null) {
+      return 0;
+    }
+    Set<Path> changed = new LinkedHashSet<>();
+    boolean overflow = false;
+    while (key != null) {
+      overflow |= collect(key, changed);
+      key = watchService.poll(debounceMillis, TimeUnit.MILLISECONDS);
+    }
+    if (overflow) {
+      // Events were lost, so look at every file
+      addFiles(root, changed);
+    }
+
+    int checked = 0;
+    for (Path file : changed) {
+      if (file.toString().endsWith(".java") && session.isSelected(file, root)
+          && !isOwnWrite(file) && Files.isRegularFile(file, LinkOption.NOFOLLOW_LINKS)) {
+        checked++;
+        try {
+          if (session.fix(file, root)) {
+            ownWrites.put(file, stamp(file));
+          }
+        } catch (IOException e) {
+          System.err.println("Failed to fix: " + file + ", " + e.getMessage());
+        }
+      }
+    }
+    return checked;
+  }
+
+  /**
+   * Adds the paths named by a key's events to the set and registers new directories.
+   *
+   * @return true if events were lost
+   */
+  private boolean collect(WatchKey key, Set<Path> changed) throws IOException {
+    Path directory = directories.get(key);
+    boolean overflow = false;
+    for (WatchEvent<?> event : key.pollEvents()) {
+      if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+        overflow = true;
+        continue;
+      }
+      Path path = directory.resolve((Path) event.context());
+      if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE
+          && Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+        register(path);
+        // Files may have been created before the directory was registered
+        addFiles(path, changed);
+      } else {
+        changed.add(path);
+      }
+    }
+    if (!key.reset()) {
+      directories.remove(key);
+    }
+    return overflow;
+  }
+
+  /**
+   * Adds the files under a directory to the set, skipping the subtrees that the
+   * include and exclude patterns rule out.
+   */
+  private void addFiles(Path directory, Set<Path> changed) throws IOException {
+    Files.walkFileTree(directory, EnumSet.noneOf(FileVisitOption.class), 63,
+        new SimpleFileVisitor<Path>() {
+          @Override
+          public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) {
+            return isPruned(dir) ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+          }
+
+          @Override
+          public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+            changed.add(file);
+            return FileVisitResult.CONTINUE;
+          }
+        });
+  }
+
+  /**
+   * Checks whether no file beneath a directory can be selected.
+   */
+  private boolean isPruned(Path directory) {
+    return !directory.equals(root) && directory.startsWith(root)
+        && session.filter().prunes(root.relativize(directory));
+  }
+
+  /**
+   * Checks whether a file is still exactly as this watcher last wrote it.
+   */
+  private boolean isOwnWrite(Path file) {
+    String written = ownWrites.remove(file);
+    if (written == null) {
+      return false;
+    }
+    try {
+      return written.equals(stamp(file));
+    } catch (IOException ex) {
+      return false;
+    }
+  }
+
+  private static String stamp(Path file) throws IOException {
+    BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+    return attributes.size() + "@" + attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+  }
+
+  @Override
+  public void close() throws IOException {
+    watchService.close();
+  }
+}
@@ -0,0 +1,73 @@
+package com.elharo.docfix;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+
+public class AhoCorasickTest {
+
+  private static final AhoCorasick MATCHER = new AhoCorasick(
+      new byte[][] {bytes("he"), bytes("she"), bytes("his"), bytes("hers")},
+      new int[] {1, 2, 4, 8});
+
+  private static byte[] bytes(String s) {
+    return s.getBytes(StandardCharsets.US_ASCII);
+  }
+
+  private static int scan(String text) {
+    byte[] buffer = bytes(text);
+    return MATCHER.scan(buffer, buffer.length, 0);
+  }
+
+  @Test
+  public void testNoMatch() {
+    assertEquals(0, scan("xyz abc"));
+  }
+
+  @Test
+  public void testEmptyInput() {
+    assertEquals(0, scan(""));
+  }
+
+  @Test
+  public void testOverlappingMatchesFollowFailureLinks() {
+    // "she" also contains "he"
+    assertEquals(1 | 2, scan("ushe"));
+  }
+
+  @Test
+  public void testAllPatterns() {
+    assertEquals(1 | 2 | 4 | 8, scan("ushers and his"));
+  }
+
+  @Test
+  public void testPartialPatternAtEndOfBuffer() {
+    assertEquals(0, scan("xxhi"));
+  }
+
+  @Test
+  public void testLengthLimitsScan() {
+    byte[] buffer = bytes("his hers");
+    assertEquals(4, MATCHER.scan(buffer, 3, 0));
+  }
+
+  @Test
+  public void testStopLabelsEndScanEarly() {
+    byte[] buffer = bytes("his hers");
+    assertEquals(4, MATCHER.scan(buffer, buffer.length, 4));
+  }
+
+  @Test
+  public void testNonAsciiBytes() {
+    AhoCorasick matcher = new AhoCorasick(
+        new byte[][] {{(byte) 0xC3, (byte) 0xA9}, {0, 'a'}}, new int[] {1, 2});
+    byte[] buffer = {'x', (byte) 0xC3, (byte) 0xA9, 0, 0, 'a'};
+    assertEquals(3, matcher.scan(buffer, buffer.length, 0));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testEmptyPattern() {
+    new AhoCorasick(new byte[][] {{}}, new int[] {1});
+  }
+}
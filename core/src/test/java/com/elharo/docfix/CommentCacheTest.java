@@ -0,0 +1,93 @@
+package com.elharo.docfix;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CommentCacheTest {
+
+  @Before
+  public void setUp() {
+    CommentCache.clear();
+  }
+
+  @Test
+  public void testRepeatedCommentIsCached() {
+    String field = "    /** Serial version UID. */";
+    String nested = "        /** Serial version UID. */";
+    assertEquals(field, CommentCache.fix(field, "\n", Indentation.DEFAULT));
+    assertEquals(nested, CommentCache.fix(nested, "\n", Indentation.DEFAULT));
+    assertEquals(1, CommentCache.size());
+  }
+
+  @Test
+  public void testMatchesParser() {
+    String[] comments = {
+      "  /**\n   * returns the value\n   *\n   * @return The value.\n   */",
+      "  /**\n   * Does things.\n   * @param a The first\n   *     continued here\n   * @param b The second\n   */",
+      "    /** constructs a thing */",
+      "  /**\n   */",
+      "/**\n * Top level.\n * @author Someone\n */",
+    };
+    for (String comment : comments) {
+      String expected = DocComment.parse(null, comment, Indentation.DEFAULT).toJava();
+      assertEquals(expected, CommentCache.fix(comment, "\n", Indentation.DEFAULT));
+      // A second call is answered from the cache
+      assertEquals(expected, CommentCache.fix(comment, "\n", Indentation.DEFAULT));
+    }
+  }
+
+  @Test
+  public void testContinuationLinesKeepRawIndentation() {
+    String shallow = "  /**\n   * @param a The first\n   *     continued\n   * @param b The second\n   */";
+    String deep = "      /**\n       * @param a The first\n       *     continued\n"
+        + "       * @param b The second\n       */";
+    assertEquals(DocComment.parse(null, shallow, Indentation.DEFAULT).toJava(),
+        CommentCache.fix(shallow, "\n", Indentation.DEFAULT));
+    assertEquals(DocComment.parse(null, deep, Indentation.DEFAULT).toJava(),
+        CommentCache.fix(deep, "\n", Indentation.DEFAULT));
+    assertEquals(1, CommentCache.size());
+  }
+
+  @Test
+  public void testCrlf() {
+    String comment = "  /**\r\n   * returns the value\r\n   * @return The value.\r\n   */";
+    String normalized = comment.replace("\r\n", "\n");
+    assertEquals(DocComment.parse(null, normalized, Indentation.DEFAULT).toJava(),
+        CommentCache.fix(comment, "\r\n", Indentation.DEFAULT));
+  }
+
+  @Test
+  public void testTabIndentationIsNotFactoredOut() {
+    Indentation tabs = new Indentation(4, true);
+    String comment = "\t/**\n\t * returns the value\n\t * @return The value.\n\t */";
+    assertEquals(DocComment.parse(null, comment, tabs).toJava(),
+        CommentCache.fix(comment, "\n", tabs));
+    assertEquals(0, CommentCache.size());
+  }
+
+  @Test
+  public void testSpacesConvertedToTabsAreNotFactoredOut() {
+    Indentation tabs = new Indentation(4, true);
+    String comment = "    /**\n     * returns the value\n     */";
+    assertEquals(DocComment.parse(null, comment, tabs).toJava(),
+        CommentCache.fix(comment, "\n", tabs));
+    assertEquals(0, CommentCache.size());
+  }
+
+  @Test
+  public void testCachedResultsAreStable() throws IOException {
+    String code = new String(Files.readAllBytes(
+        Paths.get("src/test/resources/com/elharo/math/ComplexNumber.java")), StandardCharsets.UTF_8);
+    String first = DocFix.fix(code);
+    String second = DocFix.fix(code);
+    assertEquals(first, second);
+    CommentCache.clear();
+    assertEquals(first, DocFix.fix(code));
+  }
+}
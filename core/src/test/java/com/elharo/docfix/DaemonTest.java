@@ -0,0 +1,151 @@
+package com.elharo.docfix;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DaemonTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private Path stateDirectory;
+  private Daemon daemon;
+  private Thread server;
+
+  @Before
+  public void setUp() throws IOException {
+    stateDirectory = temporaryFolder.newFolder("state").toPath();
+    daemon = new Daemon(stateDirectory);
+    server = new Thread(() -> {
+      try {
+        daemon.serve();
+      } catch (IOException ex) {
+        throw new AssertionError(ex);
+      }
+    });
+    server.start();
+  }
+
+  @After
+  public void tearDown() throws IOException, InterruptedException {
+    daemon.close();
+    server.join(10_000);
+  }
+
+  @Test
+  public void testFixThroughDaemon() throws IOException {
+    Path workingDirectory = temporaryFolder.newFolder("work").toPath();
+    Path file = workingDirectory.resolve("Test.java");
+    Files.writeString(file, "/** hello */\nclass Test {}\n", StandardCharsets.UTF_8);
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ByteArrayOutputStream err = new ByteArrayOutputStream();
+    assertEquals(0, request(workingDirectory, out, err, "Test.java"));
+
+    assertEquals("/** Hello. */\nclass Test {}\n", Files.readString(file, StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testDryRunOutputIsStreamedBack() throws IOException {
+    Path workingDirectory = temporaryFolder.newFolder("work").toPath();
+    Path file = workingDirectory.resolve("Test.java");
+    Files.writeString(file, "/** hello */\nclass Test {}\n", StandardCharsets.UTF_8);
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ByteArrayOutputStream err = new ByteArrayOutputStream();
+    assertEquals(0, request(workingDirectory, out, err, "--dryrun", "Test.java"));
+
+    String output = out.toString(StandardCharsets.UTF_8);
+    assertTrue(output, output.startsWith("Test.java"));
+    assertTrue(output, output.contains("/** Hello. */"));
+    assertEquals("/** hello */\nclass Test {}\n", Files.readString(file, StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testErrorsReportExitStatus() throws IOException {
+    Path workingDirectory = temporaryFolder.newFolder("work").toPath();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ByteArrayOutputStream err = new ByteArrayOutputStream();
+    assertEquals(1, request(workingDirectory, out, err, "Missing.java"));
+    assertTrue(err.toString(StandardCharsets.UTF_8).contains("does not exist"));
+  }
+
+  @Test
+  public void testDaemonSurvivesFailedRequest() throws IOException {
+    Path workingDirectory = temporaryFolder.newFolder("work").toPath();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ByteArrayOutputStream err = new ByteArrayOutputStream();
+    // No file system accepts a NUL in a path
+    assertEquals(1, request(workingDirectory, out, err, "Bad\0.java"));
+    assertTrue(err.toString(StandardCharsets.UTF_8),
+        err.toString(StandardCharsets.UTF_8).contains("InvalidPathException"));
+
+    Path file = workingDirectory.resolve("Test.java");
+    Files.writeString(file, "/** hello */\nclass Test {}\n", StandardCharsets.UTF_8);
+    assertEquals(0, request(workingDirectory, out, err, "Test.java"));
+    assertEquals("/** Hello. */\nclass Test {}\n", Files.readString(file, StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testWrongTokenIsRejected() throws IOException {
+    Properties state = DaemonClient.readState(stateDirectory);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ByteArrayOutputStream err = new ByteArrayOutputStream();
+    Path file = temporaryFolder.newFile("Test.java").toPath();
+    Files.writeString(file, "/** hello */\nclass Test {}\n", StandardCharsets.UTF_8);
+    try (Socket socket = DaemonClient.connect(state)) {
+      int status = DaemonClient.send(socket, "guess", file.getParent(),
+          new String[] {file.toString()}, out, err);
+      assertEquals(1, status);
+    }
+    assertEquals("/** hello */\nclass Test {}\n", Files.readString(file, StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testCloseKeepsStateOfNewerDaemon() throws IOException {
+    try (Daemon newer = new Daemon(stateDirectory)) {
+      daemon.close();
+      Properties state = DaemonClient.readState(stateDirectory);
+      assertNotNull(state);
+      assertEquals(Integer.toString(newer.port()), state.getProperty("port"));
+    }
+    assertNull(DaemonClient.readState(stateDirectory));
+  }
+
+  @Test
+  public void testStop() throws IOException, InterruptedException {
+    Path workingDirectory = temporaryFolder.newFolder("work").toPath();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ByteArrayOutputStream err = new ByteArrayOutputStream();
+    assertEquals(0, request(workingDirectory, out, err, Daemon.STOP));
+    server.join(10_000);
+    assertFalse(server.isAlive());
+    assertNull(DaemonClient.readState(stateDirectory));
+  }
+
+  private int request(Path workingDirectory, ByteArrayOutputStream out, ByteArrayOutputStream err,
+      String... args) throws IOException {
+    Properties state = DaemonClient.readState(stateDirectory);
+    assertNotNull(state);
+    try (Socket socket = DaemonClient.connect(state)) {
+      assertNotNull(socket);
+      return DaemonClient.send(socket, state.getProperty("token"), workingDirectory, args, out, err);
+    }
+  }
+}
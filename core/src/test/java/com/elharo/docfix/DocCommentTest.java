@@ -1508,4 +1508,18 @@ public class DocCommentTest {
     assertFalse("Should not contain a hyphen", 
         java.contains(" - "));
   }
+
+  @Test
+  public void testParse_tabIndentation() {
+    DocComment docComment = DocComment.parse(Kind.METHOD,
+        "\t\t/**\n\t\t * returns the value\n\t\t */", new Indentation(2, true));
+    assertEquals("\t\t/**\n\t\t * Returns the value.\n\t\t */", docComment.toJava());
+  }
+
+  @Test
+  public void testParse_tabWidth() {
+    DocComment docComment = DocComment.parse(Kind.METHOD,
+        "\t/** returns the value */", new Indentation(2, false));
+    assertEquals("  /** Returns the value. */", docComment.toJava());
+  }
 }
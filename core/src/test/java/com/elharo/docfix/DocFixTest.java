@@ -9,11 +9,20 @@ import static org.junit.Assert.assertNotNull;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 import org.junit.Before;
 import org.junit.Rule;
@@ -323,6 +332,44 @@ public class DocFixTest {
         assertTrue("Should fix Javadoc comment", result.contains("/** Constructs a new object with résumé. */"));
     }
 
+    /**
+     * Test that auto-detection falls back to ISO-8859-1 when the file is not UTF-8.
+     */
+    @Test
+    public void testFixWithAutoDetectionFallsBackToISO88591() throws IOException {
+        Path tempFile = temporaryFolder.newFile("test.java").toPath();
+        StringBuilder javaCode = new StringBuilder("package test;\n");
+        while (javaCode.length() < 5000) {
+            javaCode.append("// filler comment line\n");
+        }
+        javaCode.append("/** constructs a new object with résumé */\npublic class Test {}\n");
+        Files.writeString(tempFile, javaCode, StandardCharsets.ISO_8859_1);
+
+        DocFix.fix(tempFile, null);
+
+        String result = Files.readString(tempFile, StandardCharsets.ISO_8859_1);
+        assertTrue("Should fix Javadoc comment", result.contains("/** Constructs a new object with résumé. */"));
+    }
+
+    /**
+     * Test that the charset and indentation declared in .editorconfig are used.
+     */
+    @Test
+    public void testFixUsesEditorConfig() throws IOException {
+        Path dir = temporaryFolder.newFolder("editorconfig").toPath();
+        Files.writeString(dir.resolve(".editorconfig"),
+            "root = true\n\n[*.java]\ncharset = latin1\nindent_style = tab\ntab_width = 4\n");
+        Path file = dir.resolve("Test.java");
+        // Would be detected as UTF-8 without the declared charset
+        String javaCode = "public class Test {\n\t/** returns the caf\u00e9 */\n\tvoid m() {}\n}\n";
+        Files.writeString(file, javaCode, StandardCharsets.UTF_8);
+
+        DocFix.fixDirectory(dir, false, null);
+
+        String result = Files.readString(file, StandardCharsets.ISO_8859_1);
+        assertTrue(result, result.contains("\t/** Returns the caf\u00c3\u00a9. */\n"));
+    }
+
     /**
      * Test command line parsing with encoding flag.
      */
@@ -377,4 +424,381 @@ public class DocFixTest {
             assertTrue("Should contain the fix", fixed.contains("     * @param real the real part"));
         }
     }
+
+    @Test
+    public void testCleanFileIsNotRewritten() throws IOException {
+        Path file = temporaryFolder.newFile("Clean.java").toPath();
+        Files.writeString(file, "/** Already clean. */\npublic class Clean {}\n", StandardCharsets.UTF_8);
+        FileTime old = FileTime.fromMillis(1_000_000_000_000L);
+        Files.setLastModifiedTime(file, old);
+
+        DocFix.fix(file);
+
+        assertEquals(old, Files.getLastModifiedTime(file));
+    }
+
+    @Test
+    public void testDryRunSkipsUnchangedFiles() throws IOException {
+        Path dir = temporaryFolder.newFolder("dryrun").toPath();
+        Files.writeString(dir.resolve("Clean.java"),
+            "/** Already clean. */\npublic class Clean {}\n", StandardCharsets.UTF_8);
+
+        PrintStream oldOut = System.out;
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(baos, true, StandardCharsets.UTF_8));
+        try {
+            DocFix.fixDirectory(dir, true, null);
+        } finally {
+            System.setOut(oldOut);
+        }
+
+        assertEquals("", baos.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testCacheStillFixesChangedFiles() throws IOException {
+        Path dir = temporaryFolder.newFolder("cached").toPath();
+        Path cacheFile = temporaryFolder.getRoot().toPath().resolve("docfix.cache");
+        Path file = dir.resolve("Test.java");
+        Files.writeString(file, "/** Clean. */\npublic class Test {}\n", StandardCharsets.UTF_8);
+        FixOptions options = new FixOptions().setCacheFile(cacheFile);
+
+        DocFix.fixDirectory(dir, options);
+        assertTrue(Files.exists(cacheFile));
+
+        Files.writeString(file, "/** clean */\npublic class Test {}\n", StandardCharsets.UTF_8);
+        DocFix.fixDirectory(dir, options);
+        assertEquals("/** Clean. */\npublic class Test {}\n",
+            Files.readString(file, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testCacheSkipsUnchangedFilesWithoutReadingThem() throws IOException {
+        Path dir = temporaryFolder.newFolder("stat").toPath();
+        Path cacheFile = temporaryFolder.getRoot().toPath().resolve("docfix.cache");
+        Path file = dir.resolve("Test.java");
+        Files.writeString(file, "/** Clean. */\npublic class Test {}\n", StandardCharsets.UTF_8);
+        FileTime old = FileTime.fromMillis(1_000_000_000_000L);
+        Files.setLastModifiedTime(file, old);
+        FixOptions options = new FixOptions().setCacheFile(cacheFile);
+        DocFix.fixDirectory(dir, options);
+
+        // Same size and modification time, so the metadata says nothing changed
+        Files.writeString(file, "/** clean. */\npublic class Test {}\n", StandardCharsets.UTF_8);
+        Files.setLastModifiedTime(file, old);
+        DocFix.fixDirectory(dir, options);
+        assertEquals("/** clean. */\npublic class Test {}\n",
+            Files.readString(file, StandardCharsets.UTF_8));
+
+        // Without the cache the file is read and fixed
+        DocFix.fixDirectory(dir, new FixOptions());
+        assertEquals("/** Clean. */\npublic class Test {}\n",
+            Files.readString(file, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testFixDirectoryWithThreads() throws IOException {
+        Path dir = temporaryFolder.newFolder("threads").toPath();
+        Path cacheFile = temporaryFolder.getRoot().toPath().resolve("threads.cache");
+        for (int i = 0; i < 100; i++) {
+            Path file = dir.resolve("p" + (i % 7)).resolve("Test" + i + ".java");
+            Files.createDirectories(file.getParent());
+            Files.writeString(file, "/** class " + i + " */\npublic class Test" + i + " {}\n",
+                StandardCharsets.UTF_8);
+        }
+
+        FixOptions options = new FixOptions().setThreads(4).setCacheFile(cacheFile);
+        DocFix.fixDirectory(dir, options);
+
+        for (int i = 0; i < 100; i++) {
+            Path file = dir.resolve("p" + (i % 7)).resolve("Test" + i + ".java");
+            assertEquals("/** Class " + i + ". */\npublic class Test" + i + " {}\n",
+                Files.readString(file, StandardCharsets.UTF_8));
+        }
+        // Every file is clean now, so the second run records all of them
+        DocFix.fixDirectory(dir, options);
+        assertTrue(Files.exists(cacheFile));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testThreadsMustBePositive() {
+        new FixOptions().setThreads(0);
+    }
+
+    @Test
+    public void testDistinctRoots() throws IOException {
+        Path main = temporaryFolder.newFolder("roots", "main").toPath();
+        Path nested = temporaryFolder.newFolder("roots", "main", "generated").toPath();
+        Path test = temporaryFolder.newFolder("roots", "test").toPath();
+        Path missing = temporaryFolder.getRoot().toPath().resolve("roots/missing");
+
+        List<Path> roots = DocFix.distinctRoots(
+            Arrays.asList(nested, main, test, main.resolve("."), missing));
+
+        assertEquals(Arrays.asList(main, test), roots);
+    }
+
+    @Test
+    public void testFixDirectoriesProcessesOverlappingRootsOnce() throws IOException {
+        Path main = temporaryFolder.newFolder("overlap", "main").toPath();
+        Path generated = temporaryFolder.newFolder("overlap", "main", "generated").toPath();
+        Path test = temporaryFolder.newFolder("overlap", "test").toPath();
+        Files.writeString(main.resolve("Main.java"), "/** main */\nclass Main {}\n",
+            StandardCharsets.UTF_8);
+        Files.writeString(generated.resolve("Generated.java"),
+            "/** generated */\nclass Generated {}\n", StandardCharsets.UTF_8);
+        Files.writeString(test.resolve("MainTest.java"), "/** test */\nclass MainTest {}\n",
+            StandardCharsets.UTF_8);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        PrintStream oldOut = System.out;
+        System.setOut(new PrintStream(baos, true, StandardCharsets.UTF_8));
+        try {
+            DocFix.fixDirectories(Arrays.asList(generated, main, test, main),
+                new FixOptions().setDryrun(true).setThreads(2));
+        } finally {
+            System.setOut(oldOut);
+        }
+
+        String output = baos.toString(StandardCharsets.UTF_8);
+        assertEquals(output, output.indexOf("/** Generated. */"),
+            output.lastIndexOf("/** Generated. */"));
+        assertEquals(output, output.indexOf("/** Main. */"), output.lastIndexOf("/** Main. */"));
+        assertTrue(output, output.contains("/** Test. */"));
+        assertTrue(output, output.contains("/** Generated. */"));
+        assertTrue(output, output.contains("/** Main. */"));
+    }
+
+    @Test
+    public void testFixDirectoryWithIncludesAndExcludes() throws IOException {
+        Path dir = temporaryFolder.newFolder("filtered").toPath();
+        Path api = dir.resolve("com/example/api/Api.java");
+        Path vendor = dir.resolve("com/example/vendor/Vendor.java");
+        Path other = dir.resolve("org/Other.java");
+        for (Path file : Arrays.asList(api, vendor, other)) {
+            Files.createDirectories(file.getParent());
+            Files.writeString(file, "/** fix me */\nclass Test {}\n", StandardCharsets.UTF_8);
+        }
+
+        DocFix.fixDirectory(dir, new FixOptions()
+            .setIncludes(Arrays.asList("com/**"))
+            .setExcludes(Arrays.asList("**/vendor/")));
+
+        assertEquals("/** Fix me. */\nclass Test {}\n", Files.readString(api, StandardCharsets.UTF_8));
+        assertEquals("/** fix me */\nclass Test {}\n", Files.readString(vendor, StandardCharsets.UTF_8));
+        assertEquals("/** fix me */\nclass Test {}\n", Files.readString(other, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testCheckFindsFilesWithoutChangingOrPrinting() throws IOException {
+        Path dir = temporaryFolder.newFolder("check").toPath();
+        Path dirty = dir.resolve("Dirty.java");
+        Path clean = dir.resolve("Clean.java");
+        Files.writeString(dirty, "/** dirty */\nclass Dirty {}\n", StandardCharsets.UTF_8);
+        Files.writeString(clean, "/** Clean. */\nclass Clean {}\n", StandardCharsets.UTF_8);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        PrintStream oldOut = System.out;
+        System.setOut(new PrintStream(baos, true, StandardCharsets.UTF_8));
+        List<Path> violations;
+        try {
+            violations = DocFix.fixDirectories(Arrays.asList(dir), new FixOptions().setCheck(true));
+        } finally {
+            System.setOut(oldOut);
+        }
+
+        assertEquals(Arrays.asList(dirty), violations);
+        assertEquals("", baos.toString(StandardCharsets.UTF_8));
+        assertEquals("/** dirty */\nclass Dirty {}\n", Files.readString(dirty, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testCheckFailFastStopsAtFirstViolation() throws IOException {
+        Path dir = temporaryFolder.newFolder("failfast").toPath();
+        for (int i = 0; i < 10; i++) {
+            Files.writeString(dir.resolve("Test" + i + ".java"), "/** dirty */\nclass Test {}\n",
+                StandardCharsets.UTF_8);
+        }
+
+        List<Path> violations = DocFix.fixDirectories(Arrays.asList(dir),
+            new FixOptions().setCheck(true).setFailFast(true));
+
+        assertEquals(1, violations.size());
+    }
+
+    @Test
+    public void testRunCheckReturnsFailureStatus() throws IOException {
+        Path dir = temporaryFolder.newFolder("runcheck").toPath();
+        Path file = dir.resolve("Test.java");
+        Files.writeString(file, "/** Clean. */\nclass Test {}\n", StandardCharsets.UTF_8);
+        assertEquals(0, DocFix.run(new String[] {"--check", dir.toString()}, dir));
+
+        Files.writeString(file, "/** dirty */\nclass Test {}\n", StandardCharsets.UTF_8);
+        assertEquals(1, DocFix.run(new String[] {"--check", "--fail-fast", dir.toString()}, dir));
+        assertEquals(1, DocFix.run(new String[] {"--check", file.toString()}, dir));
+        assertEquals("/** dirty */\nclass Test {}\n", Files.readString(file, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testStatisticsCountFilesAndBytes() throws IOException {
+        Path dir = temporaryFolder.newFolder("statistics").toPath();
+        Path cacheFile = temporaryFolder.getRoot().toPath().resolve("statistics.cache");
+        String dirty = "/** dirty */\nclass Dirty {}\n";
+        String clean = "/** Clean. */\nclass Clean {}\n";
+        Files.writeString(dir.resolve("Dirty.java"), dirty, StandardCharsets.UTF_8);
+        Files.writeString(dir.resolve("Clean.java"), clean, StandardCharsets.UTF_8);
+
+        FixStatistics first = new FixStatistics();
+        DocFix.fixDirectory(dir, new FixOptions().setCacheFile(cacheFile).setStatistics(first));
+        assertEquals(2, first.getFiles());
+        assertEquals(0, first.getSkipped());
+        assertEquals(1, first.getChanged());
+        assertEquals(0, first.getFailed());
+        assertEquals(dirty.length() + clean.length(), first.getBytesRead());
+        assertEquals("/** Dirty. */\nclass Dirty {}\n".length(), first.getBytesWritten());
+
+        // Once both files are clean and old enough to trust their metadata, none is read
+        FileTime old = FileTime.fromMillis(1_000_000_000_000L);
+        Files.setLastModifiedTime(dir.resolve("Dirty.java"), old);
+        Files.setLastModifiedTime(dir.resolve("Clean.java"), old);
+        DocFix.fixDirectory(dir, new FixOptions().setCacheFile(cacheFile));
+        FixStatistics second = new FixStatistics();
+        DocFix.fixDirectory(dir, new FixOptions().setCacheFile(cacheFile).setStatistics(second));
+        assertEquals(2, second.getFiles());
+        assertEquals(2, second.getSkipped());
+        assertEquals(0, second.getChanged());
+        assertEquals(0, second.getBytesRead());
+        assertEquals(0, second.getBytesWritten());
+
+        FixStatistics total = new FixStatistics();
+        total.add(first);
+        total.add(second);
+        assertEquals(4, total.getFiles());
+        assertEquals(1, total.getChanged());
+    }
+
+    @Test
+    public void testOutputDirectoryLeavesSourcesUntouched() throws IOException {
+        Path dir = temporaryFolder.newFolder("readonly").toPath();
+        Path output = temporaryFolder.getRoot().toPath().resolve("fixed");
+        String dirty = "/** dirty */\nclass Dirty {}\n";
+        String clean = "/** Clean. */\nclass Clean {}\n";
+        Files.createDirectories(dir.resolve("p"));
+        Files.writeString(dir.resolve("p/Dirty.java"), dirty, StandardCharsets.UTF_8);
+        Files.writeString(dir.resolve("Clean.java"), clean, StandardCharsets.UTF_8);
+
+        List<Path> changed = DocFix.fixDirectories(Arrays.asList(dir),
+            new FixOptions().setOutputDirectory(output));
+
+        assertEquals(Arrays.asList(dir.resolve("p/Dirty.java")), changed);
+        assertEquals(dirty, Files.readString(dir.resolve("p/Dirty.java"), StandardCharsets.UTF_8));
+        assertEquals("/** Dirty. */\nclass Dirty {}\n",
+            Files.readString(output.resolve("p/Dirty.java"), StandardCharsets.UTF_8));
+        assertEquals(clean, Files.readString(output.resolve("Clean.java"), StandardCharsets.UTF_8));
+
+        // A second run replaces the earlier output rather than writing through a link
+        Files.writeString(dir.resolve("Clean.java"), "/** now dirty */\nclass Clean {}\n",
+            StandardCharsets.UTF_8);
+        DocFix.fixDirectory(dir, new FixOptions().setOutputDirectory(output));
+        assertEquals("/** now dirty */\nclass Clean {}\n",
+            Files.readString(dir.resolve("Clean.java"), StandardCharsets.UTF_8));
+        assertEquals("/** Now dirty. */\nclass Clean {}\n",
+            Files.readString(output.resolve("Clean.java"), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testOutputDirectoryInsideSourcesIsNotWalked() throws IOException {
+        Path dir = temporaryFolder.newFolder("nestedoutput").toPath();
+        Files.writeString(dir.resolve("Test.java"), "/** dirty */\nclass Test {}\n",
+            StandardCharsets.UTF_8);
+
+        assertEquals(0, DocFix.run(new String[] {"--output-dir", "out", "."}, dir));
+        assertEquals(0, DocFix.run(new String[] {"--output-dir", "out", "."}, dir));
+
+        assertEquals("/** Dirty. */\nclass Test {}\n",
+            Files.readString(dir.resolve("out/Test.java"), StandardCharsets.UTF_8));
+        assertFalse(Files.exists(dir.resolve("out/out")));
+        assertEquals(1, DocFix.run(new String[] {"--output-dir", ".", "."}, dir));
+    }
+
+    @Test
+    public void testFixArchiveRewritesOnlyChangedEntries() throws IOException {
+        Path archive = temporaryFolder.getRoot().toPath().resolve("sources.jar");
+        Path output = temporaryFolder.getRoot().toPath().resolve("fixed-sources.jar");
+        byte[] clean = "/** Clean. */\nclass Clean {}\n".getBytes(StandardCharsets.UTF_8);
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(archive))) {
+            zip.putNextEntry(new ZipEntry("com/example/Dirty.java"));
+            zip.write("/** dirty */\nclass Dirty {}\n".getBytes(StandardCharsets.UTF_8));
+            ZipEntry stored = new ZipEntry("com/example/Clean.java");
+            stored.setMethod(ZipEntry.STORED);
+            stored.setSize(clean.length);
+            CRC32 crc = new CRC32();
+            crc.update(clean);
+            stored.setCrc(crc.getValue());
+            zip.putNextEntry(stored);
+            zip.write(clean);
+            zip.putNextEntry(new ZipEntry("META-INF/notes.txt"));
+            zip.write("/** not java */".getBytes(StandardCharsets.UTF_8));
+        }
+        byte[] original = Files.readAllBytes(archive);
+
+        assertEquals(Arrays.asList("/com/example/Dirty.java"),
+            DocFix.fixArchive(archive, null, new FixOptions().setCheck(true)));
+        List<String> changed = DocFix.fixArchive(archive, output, new FixOptions());
+
+        assertEquals(Arrays.asList("/com/example/Dirty.java"), changed);
+        assertTrue(Arrays.equals(original, Files.readAllBytes(archive)));
+        try (ZipFile zip = new ZipFile(output.toFile())) {
+            assertEquals("/** Dirty. */\nclass Dirty {}\n", new String(
+                zip.getInputStream(zip.getEntry("com/example/Dirty.java")).readAllBytes(),
+                StandardCharsets.UTF_8));
+            // Unchanged entries keep their compression method
+            ZipEntry stored = zip.getEntry("com/example/Clean.java");
+            assertEquals(ZipEntry.STORED, stored.getMethod());
+            assertTrue(Arrays.equals(clean, zip.getInputStream(stored).readAllBytes()));
+            assertEquals("/** not java */", new String(
+                zip.getInputStream(zip.getEntry("META-INF/notes.txt")).readAllBytes(),
+                StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void testCachedArchiveEntriesAreReadAgain() throws IOException {
+        Path archive = temporaryFolder.getRoot().toPath().resolve("sources.jar");
+        Path cacheFile = temporaryFolder.getRoot().toPath().resolve("docfix.cache");
+        writeArchiveEntry(archive, "/** Clean. */\nclass Clean {}\n");
+        assertEquals(Collections.emptyList(), DocFix.fixArchive(archive, null,
+            new FixOptions().setCheck(true).setCacheFile(cacheFile)));
+
+        // A rebuilt archive whose entry has the same size and timestamp
+        writeArchiveEntry(archive, "/** clean */\nclass Clean {}\n\n");
+
+        assertEquals(Arrays.asList("/com/example/Clean.java"), DocFix.fixArchive(archive, null,
+            new FixOptions().setCheck(true).setCacheFile(cacheFile)));
+    }
+
+    private static void writeArchiveEntry(Path archive, String content) throws IOException {
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(archive))) {
+            ZipEntry entry = new ZipEntry("com/example/Clean.java");
+            entry.setTime(1_000_000_000_000L);
+            zip.putNextEntry(entry);
+            zip.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void testRunFixesArchive() throws IOException {
+        Path dir = temporaryFolder.newFolder("archive").toPath();
+        Path archive = dir.resolve("src.zip");
+        try (OutputStream out = Files.newOutputStream(archive);
+            ZipOutputStream zip = new ZipOutputStream(out)) {
+            zip.putNextEntry(new ZipEntry("Test.java"));
+            zip.write("/** dirty */\nclass Test {}\n".getBytes(StandardCharsets.UTF_8));
+        }
+
+        assertEquals(1, DocFix.run(new String[] {"--check", "src.zip"}, dir));
+        assertEquals(0, DocFix.run(new String[] {"--output-archive", "out.zip", "src.zip"}, dir));
+        assertEquals(0, DocFix.run(new String[] {"--check", "out.zip"}, dir));
+        assertEquals(1, DocFix.run(new String[] {"--output-archive", "out.zip", "."}, dir));
+    }
 }
@@ -0,0 +1,151 @@
+package com.elharo.docfix;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.regex.Pattern;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class EditorConfigTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private Path root() throws IOException {
+    Path root = temporaryFolder.getRoot().toPath();
+    Files.writeString(root.resolve(".editorconfig"), "root = true\n");
+    return root;
+  }
+
+  private static void write(Path dir, String config) throws IOException {
+    Files.createDirectories(dir);
+    Files.writeString(dir.resolve(".editorconfig"), config);
+  }
+
+  @Test
+  public void testGlobWithoutSlashMatchesAnyDirectory() {
+    Pattern glob = EditorConfig.compileGlob("*.java");
+    assertTrue(glob.matcher("Foo.java").matches());
+    assertTrue(glob.matcher("com/example/Foo.java").matches());
+    assertFalse(glob.matcher("Foo.kt").matches());
+  }
+
+  @Test
+  public void testGlobWithSlashIsRelative() {
+    Pattern glob = EditorConfig.compileGlob("src/*.java");
+    assertTrue(glob.matcher("src/Foo.java").matches());
+    assertFalse(glob.matcher("src/com/Foo.java").matches());
+    assertFalse(glob.matcher("other/src/Foo.java").matches());
+    assertTrue(EditorConfig.compileGlob("/src/**.java").matcher("src/com/Foo.java").matches());
+  }
+
+  @Test
+  public void testGlobAlternativesAndSets() {
+    Pattern glob = EditorConfig.compileGlob("*.{java,kt}");
+    assertTrue(glob.matcher("Foo.java").matches());
+    assertTrue(glob.matcher("Foo.kt").matches());
+    assertFalse(glob.matcher("Foo.scala").matches());
+
+    assertTrue(EditorConfig.compileGlob("[A-F]*.java").matcher("Bar.java").matches());
+    assertFalse(EditorConfig.compileGlob("[!A-F]*.java").matcher("Bar.java").matches());
+    assertTrue(EditorConfig.compileGlob("Test?.java").matcher("Test1.java").matches());
+  }
+
+  @Test
+  public void testGlobNumericRange() {
+    Pattern glob = EditorConfig.compileGlob("Test{1..3}.java");
+    assertTrue(glob.matcher("Test2.java").matches());
+    assertFalse(glob.matcher("Test4.java").matches());
+  }
+
+  @Test
+  public void testNoConfig() throws IOException {
+    Path root = root();
+    EditorConfig.Settings settings = new EditorConfig().settings(root.resolve("Foo.java"));
+    assertNull(settings.charset);
+    assertSame(Indentation.DEFAULT, settings.indentation);
+  }
+
+  @Test
+  public void testCharsetAndIndentation() throws IOException {
+    Path root = root();
+    write(root, "root = true\n\n[*]\ncharset = latin1\n\n[*.java]\nindent_style = tab\nindent_size = 2\n");
+    EditorConfig.Settings settings = new EditorConfig().settings(root.resolve("a/b/Foo.java"));
+    assertEquals(StandardCharsets.ISO_8859_1, settings.charset);
+    assertTrue(settings.indentation.useTabs);
+    assertEquals(2, settings.indentation.tabWidth);
+  }
+
+  @Test
+  public void testTabWidthOverridesIndentSize() throws IOException {
+    Path root = root();
+    write(root, "root = true\n[*]\nindent_size = 2\ntab_width = 8\n");
+    EditorConfig.Settings settings = new EditorConfig().settings(root.resolve("Foo.java"));
+    assertEquals(8, settings.indentation.tabWidth);
+    assertFalse(settings.indentation.useTabs);
+  }
+
+  @Test
+  public void testNearerFileWins() throws IOException {
+    Path root = root();
+    write(root, "root = true\n[*]\ncharset = latin1\nindent_style = tab\n");
+    write(root.resolve("module"), "[*.java]\ncharset = utf-8\n");
+    EditorConfig config = new EditorConfig();
+    EditorConfig.Settings settings = config.settings(root.resolve("module/src/Foo.java"));
+    assertEquals(StandardCharsets.UTF_8, settings.charset);
+    assertTrue(settings.indentation.useTabs);
+    assertEquals(StandardCharsets.ISO_8859_1, config.settings(root.resolve("Foo.java")).charset);
+  }
+
+  @Test
+  public void testRevalidateSeesEdits() throws IOException {
+    Path root = root();
+    write(root, "root = true\n[*]\ncharset = latin1\n");
+    EditorConfig config = new EditorConfig();
+    assertEquals(StandardCharsets.ISO_8859_1, config.settings(root.resolve("a/Foo.java")).charset);
+
+    write(root.resolve("a"), "[*]\ncharset = utf-8\n");
+    assertEquals(StandardCharsets.ISO_8859_1, config.settings(root.resolve("a/Foo.java")).charset);
+    config.revalidate();
+    assertEquals(StandardCharsets.UTF_8, config.settings(root.resolve("a/Foo.java")).charset);
+
+    Files.delete(root.resolve("a/.editorconfig"));
+    config.revalidate();
+    assertEquals(StandardCharsets.ISO_8859_1, config.settings(root.resolve("a/Foo.java")).charset);
+  }
+
+  @Test
+  public void testRootStopsSearch() throws IOException {
+    Path root = root();
+    write(root, "root = true\n[*]\ncharset = latin1\n");
+    write(root.resolve("module"), "root = true\n[*.java]\nindent_style = tab\n");
+    EditorConfig.Settings settings = new EditorConfig().settings(root.resolve("module/Foo.java"));
+    assertNull(settings.charset);
+    assertTrue(settings.indentation.useTabs);
+  }
+
+  @Test
+  public void testUnset() throws IOException {
+    Path root = root();
+    write(root, "root = true\n[*]\ncharset = latin1\n[*.java]\ncharset = unset\n");
+    EditorConfig.Settings settings = new EditorConfig().settings(root.resolve("Foo.java"));
+    assertNull(settings.charset);
+  }
+
+  @Test
+  public void testCommentsAndCase() throws IOException {
+    Path root = root();
+    write(root, "# comment\nroot = true\n; another comment\n[*]\nCharset = UTF-16LE\n");
+    EditorConfig.Settings settings = new EditorConfig().settings(root.resolve("Foo.java"));
+    assertEquals(StandardCharsets.UTF_16LE, settings.charset);
+  }
+}
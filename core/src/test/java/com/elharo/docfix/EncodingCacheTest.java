@@ -0,0 +1,95 @@
+package com.elharo.docfix;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import org.junit.Test;
+
+public class EncodingCacheTest {
+
+  private static final Path ROOT = Paths.get("src/main/java");
+
+  private static final byte[] ASCII =
+      "package test;\nclass Test {}\n".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] LATIN_1 =
+      "/** Café. */\nclass Test {}\n".getBytes(StandardCharsets.ISO_8859_1);
+  private static final byte[] UTF_8 =
+      "/** Café. */\nclass Test {}\n".getBytes(StandardCharsets.UTF_8);
+
+  @Test
+  public void testDistribution() throws IOException {
+    EncodingCache cache = new EncodingCache();
+    cache.decode(ROOT, UTF_8);
+    cache.decode(ROOT, LATIN_1);
+    cache.decode(ROOT, ASCII);
+
+    Map<Charset, Integer> distribution = cache.distribution(ROOT);
+    assertEquals(Integer.valueOf(2), distribution.get(StandardCharsets.UTF_8));
+    assertEquals(Integer.valueOf(1), distribution.get(StandardCharsets.ISO_8859_1));
+    assertEquals(StandardCharsets.UTF_8, distribution.keySet().iterator().next());
+  }
+
+  @Test
+  public void testRootsAreSeparate() throws IOException {
+    EncodingCache cache = new EncodingCache();
+    cache.decode(ROOT, LATIN_1);
+    assertTrue(cache.distribution(Paths.get("src/test/java")).isEmpty());
+  }
+
+  @Test
+  public void testAdoptedLatin1StillDecodesAscii() throws IOException {
+    EncodingCache cache = new EncodingCache();
+    for (int i = 0; i < 20; i++) {
+      assertEquals(StandardCharsets.ISO_8859_1, cache.decode(ROOT, LATIN_1).charset);
+    }
+    // After adoption ASCII files are read as ISO-8859-1, which decodes them identically
+    EncodingDetector.Decoded decoded = cache.decode(ROOT, ASCII);
+    assertEquals(StandardCharsets.ISO_8859_1, decoded.charset);
+    assertEquals("package test;\nclass Test {}\n", decoded.text.toString());
+  }
+
+  @Test
+  public void testAdoptedCharsetFallsBackWhenVerificationFails() throws IOException {
+    EncodingCache cache = new EncodingCache();
+    for (int i = 0; i < 20; i++) {
+      cache.decode(ROOT, LATIN_1);
+    }
+    EncodingDetector.Decoded decoded = cache.decode(ROOT, UTF_8);
+    assertEquals(StandardCharsets.UTF_8, decoded.charset);
+    assertEquals("/** Café. */\nclass Test {}\n", decoded.text.toString());
+  }
+
+  @Test
+  public void testAdoptedUTF8FallsBackForLatin1() throws IOException {
+    EncodingCache cache = new EncodingCache();
+    for (int i = 0; i < 20; i++) {
+      cache.decode(ROOT, UTF_8);
+    }
+    assertEquals(StandardCharsets.ISO_8859_1, cache.decode(ROOT, LATIN_1).charset);
+    assertEquals(StandardCharsets.UTF_16BE,
+        cache.decode(ROOT, "class Test {}".getBytes(StandardCharsets.UTF_16BE)).charset);
+  }
+
+  @Test
+  public void testVerificationRejectsWideEncodings() {
+    byte[] content = "class Test {}".getBytes(StandardCharsets.UTF_16LE);
+    assertNull(EncodingDetector.decodeIfVerified(content, StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testReport() throws IOException {
+    EncodingCache cache = new EncodingCache();
+    assertEquals(ROOT + ": no files decoded", cache.report(ROOT));
+    cache.decode(ROOT, UTF_8);
+    cache.decode(ROOT, UTF_8);
+    cache.decode(ROOT, LATIN_1);
+    assertEquals(ROOT + ": UTF-8 2, ISO-8859-1 1", cache.report(ROOT));
+  }
+}
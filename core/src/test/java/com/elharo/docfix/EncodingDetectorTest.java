@@ -4,6 +4,7 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 import java.io.IOException;
+import java.nio.charset.CharacterCodingException;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
@@ -111,4 +112,157 @@ public class EncodingDetectorTest {
     // Should still detect or default to UTF-8
     assertEquals(StandardCharsets.UTF_8, detected);
   }
-}
\ No newline at end of file
+
+  @Test
+  public void testDetectISO88591Encoding() throws IOException {
+    Path tempFile = temporaryFolder.newFile("latin1.java").toPath();
+    String javaContent = "/** Caf\u00e9 class. */\npublic class Test {}";
+    Files.write(tempFile, javaContent.getBytes(StandardCharsets.ISO_8859_1));
+
+    Charset detected = EncodingDetector.detectEncoding(tempFile);
+    assertEquals(StandardCharsets.ISO_8859_1, detected);
+  }
+
+  @Test
+  public void testDetectUTF16LEWithoutBOM() throws IOException {
+    Path tempFile = temporaryFolder.newFile("utf16lenobom.java").toPath();
+    String javaContent = "package test;\n\npublic class Test {}";
+    Files.write(tempFile, javaContent.getBytes(StandardCharsets.UTF_16LE));
+
+    Charset detected = EncodingDetector.detectEncoding(tempFile);
+    assertEquals(StandardCharsets.UTF_16LE, detected);
+  }
+
+  @Test
+  public void testDetectUTF16BEWithoutBOM() throws IOException {
+    Path tempFile = temporaryFolder.newFile("utf16benobom.java").toPath();
+    String javaContent = "public enum Test { A, B }";
+    Files.write(tempFile, javaContent.getBytes(StandardCharsets.UTF_16BE));
+
+    Charset detected = EncodingDetector.detectEncoding(tempFile);
+    assertEquals(StandardCharsets.UTF_16BE, detected);
+  }
+
+  @Test
+  public void testDetectUTF32WithoutBOM() throws IOException {
+    Path tempFile = temporaryFolder.newFile("utf32.java").toPath();
+    String javaContent = "public interface Test {}";
+    Files.write(tempFile, javaContent.getBytes(Charset.forName("UTF-32LE")));
+
+    Charset detected = EncodingDetector.detectEncoding(tempFile);
+    assertEquals(Charset.forName("UTF-32LE"), detected);
+  }
+
+  @Test
+  public void testDetectEncodingWithUTF32LEBOM() throws IOException {
+    Path tempFile = temporaryFolder.newFile("utf32lebom.java").toPath();
+    byte[] content = {
+        (byte) 0xFF, (byte) 0xFE, 0, 0, // UTF-32 LE BOM
+        'p', 0, 0, 0, 'a', 0, 0, 0
+    };
+    Files.write(tempFile, content);
+
+    Charset detected = EncodingDetector.detectEncoding(tempFile);
+    assertEquals(Charset.forName("UTF-32LE"), detected);
+  }
+
+  @Test
+  public void testDetectLateLatin1ByteOnlyInWholeFile() throws IOException {
+    Path tempFile = temporaryFolder.newFile("latelatin1.java").toPath();
+    StringBuilder javaContent = new StringBuilder("package test;\n");
+    while (javaContent.length() < 5000) {
+      javaContent.append("// filler comment line\n");
+    }
+    javaContent.append("/** Caf\u00e9. */\npublic class Test {}\n");
+    Files.write(tempFile, javaContent.toString().getBytes(StandardCharsets.ISO_8859_1));
+
+    assertEquals(StandardCharsets.UTF_8, EncodingDetector.detectEncoding(tempFile));
+    assertEquals(StandardCharsets.ISO_8859_1, EncodingDetector.detectEncoding(tempFile, true));
+  }
+
+  @Test
+  public void testIsValidUTF8_ascii() {
+    byte[] buffer = "package test; public class Test {}".getBytes(StandardCharsets.US_ASCII);
+    assertTrue(EncodingDetector.isValidUTF8(buffer, buffer.length, true));
+  }
+
+  @Test
+  public void testIsValidUTF8_multibyteAtEveryOffset() {
+    // Moves a multibyte character through every position of the word-sized ASCII skip
+    for (int offset = 0; offset < 20; offset++) {
+      String text = "x".repeat(offset) + "\u00e9\u20ac\ud83d\ude00" + "y".repeat(offset);
+      byte[] buffer = text.getBytes(StandardCharsets.UTF_8);
+      assertTrue(text, EncodingDetector.isValidUTF8(buffer, buffer.length, true));
+    }
+  }
+
+  @Test
+  public void testIsValidUTF8_invalidByteAtEveryOffset() {
+    for (int offset = 0; offset < 20; offset++) {
+      String text = "x".repeat(offset) + "\u00e9" + "y".repeat(offset);
+      byte[] buffer = text.getBytes(StandardCharsets.ISO_8859_1);
+      assertFalse(text, EncodingDetector.isValidUTF8(buffer, buffer.length, true));
+    }
+  }
+
+  @Test
+  public void testIsValidUTF8_truncatedSequence() {
+    byte[] buffer = "abcdefgh\u20ac".getBytes(StandardCharsets.UTF_8);
+    int length = buffer.length - 1;
+    assertTrue(EncodingDetector.isValidUTF8(buffer, length, false));
+    assertFalse(EncodingDetector.isValidUTF8(buffer, length, true));
+  }
+
+  @Test
+  public void testDecodeUTF8() throws IOException {
+    byte[] content = "/** Caf\u00e9. */\npublic class Test {}".getBytes(StandardCharsets.UTF_8);
+    EncodingDetector.Decoded decoded = EncodingDetector.decode(content);
+    assertEquals(StandardCharsets.UTF_8, decoded.charset);
+    assertEquals("/** Caf\u00e9. */\npublic class Test {}", decoded.text.toString());
+  }
+
+  @Test
+  public void testDecodeFallsBackToISO88591() throws IOException {
+    byte[] content = "/** Caf\u00e9. */\npublic class Test {}".getBytes(StandardCharsets.ISO_8859_1);
+    EncodingDetector.Decoded decoded = EncodingDetector.decode(content);
+    assertEquals(StandardCharsets.ISO_8859_1, decoded.charset);
+    assertEquals("/** Caf\u00e9. */\npublic class Test {}", decoded.text.toString());
+  }
+
+  @Test
+  public void testDecodeFallsBackWithoutKeywords() throws IOException {
+    byte[] content = "na\u00efve".getBytes(StandardCharsets.ISO_8859_1);
+    EncodingDetector.Decoded decoded = EncodingDetector.decode(content);
+    assertEquals(StandardCharsets.ISO_8859_1, decoded.charset);
+    assertEquals("na\u00efve", decoded.text.toString());
+  }
+
+  @Test
+  public void testDecodeUTF16WithoutBOM() throws IOException {
+    byte[] content = "package test;\nclass Test {}".getBytes(StandardCharsets.UTF_16BE);
+    EncodingDetector.Decoded decoded = EncodingDetector.decode(content);
+    assertEquals(StandardCharsets.UTF_16BE, decoded.charset);
+    assertEquals("package test;\nclass Test {}", decoded.text.toString());
+  }
+
+  @Test
+  public void testDecodeKeepsUTF8BOM() throws IOException {
+    byte[] content = "\ufeffclass Test {}".getBytes(StandardCharsets.UTF_8);
+    EncodingDetector.Decoded decoded = EncodingDetector.decode(content);
+    assertEquals(StandardCharsets.UTF_8, decoded.charset);
+    assertEquals("\ufeffclass Test {}", decoded.text.toString());
+  }
+
+  @Test
+  public void testDecodeEmpty() throws IOException {
+    EncodingDetector.Decoded decoded = EncodingDetector.decode(new byte[0]);
+    assertEquals(StandardCharsets.UTF_8, decoded.charset);
+    assertEquals(0, decoded.text.length());
+  }
+
+  @Test(expected = CharacterCodingException.class)
+  public void testDecodeWithCharsetReportsMalformedInput() throws IOException {
+    byte[] content = "caf\u00e9".getBytes(StandardCharsets.ISO_8859_1);
+    EncodingDetector.decode(content, StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,195 @@
+package com.elharo.docfix;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FixCacheTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private static final FileTime OLD = FileTime.fromMillis(1_000_000_000_000L);
+
+  private static final byte[] CONTENT =
+      "/** Clean. */\nclass Test {}\n".getBytes(StandardCharsets.UTF_8);
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    Path cacheFile = temporaryFolder.getRoot().toPath().resolve("docfix.cache");
+    Path source = temporaryFolder.newFile("Test.java").toPath();
+    FixCache.Fingerprint fingerprint = FixCache.fingerprint(CONTENT, "");
+
+    FixCache cache = FixCache.load(cacheFile, "encoding=");
+    assertFalse(cache.isClean(source, fingerprint));
+    cache.markClean(source, fingerprint, "", null);
+    cache.save();
+
+    FixCache reloaded = FixCache.load(cacheFile, "encoding=");
+    assertTrue(reloaded.isClean(source, fingerprint));
+  }
+
+  @Test
+  public void testChangedContentIsNotClean() throws IOException {
+    Path cacheFile = temporaryFolder.getRoot().toPath().resolve("docfix.cache");
+    Path source = temporaryFolder.newFile("Test.java").toPath();
+    FixCache cache = FixCache.load(cacheFile, "encoding=");
+    cache.markClean(source, FixCache.fingerprint(CONTENT, ""), "", null);
+    cache.save();
+
+    byte[] changed = "/** clean. */\nclass Test {}\n".getBytes(StandardCharsets.UTF_8);
+    FixCache reloaded = FixCache.load(cacheFile, "encoding=");
+    assertFalse(reloaded.isClean(source, FixCache.fingerprint(changed, "")));
+  }
+
+  @Test
+  public void testSettingsAreFingerprinted() {
+    FixCache.Fingerprint spaces = FixCache.fingerprint(CONTENT, "indent_style=space");
+    FixCache.Fingerprint tabs = FixCache.fingerprint(CONTENT, "indent_style=tab");
+    assertFalse(spaces.equals(tabs));
+    assertTrue(spaces.equals(FixCache.fingerprint(CONTENT, "indent_style=space")));
+  }
+
+  @Test
+  public void testConfigurationChangeDiscardsCache() throws IOException {
+    Path cacheFile = temporaryFolder.getRoot().toPath().resolve("docfix.cache");
+    Path source = temporaryFolder.newFile("Test.java").toPath();
+    FixCache.Fingerprint fingerprint = FixCache.fingerprint(CONTENT, "");
+    FixCache cache = FixCache.load(cacheFile, "encoding=");
+    cache.markClean(source, fingerprint, "", null);
+    cache.save();
+
+    FixCache reloaded = FixCache.load(cacheFile, "encoding=UTF-8");
+    assertFalse(reloaded.isClean(source, fingerprint));
+  }
+
+  @Test
+  public void testCorruptCacheIsIgnored() throws IOException {
+    Path cacheFile = temporaryFolder.newFile("docfix.cache").toPath();
+    Files.write(cacheFile, new byte[] {0x44, 0x46, 0x63});
+    Path source = temporaryFolder.newFile("Test.java").toPath();
+    FixCache.Fingerprint fingerprint = FixCache.fingerprint(CONTENT, "");
+
+    FixCache cache = FixCache.load(cacheFile, "encoding=");
+    assertFalse(cache.isClean(source, fingerprint));
+    cache.markClean(source, fingerprint, "", null);
+    cache.save();
+    assertTrue(FixCache.load(cacheFile, "encoding=").isClean(source, fingerprint));
+  }
+
+  @Test
+  public void testDeletedFilesArePruned() throws IOException {
+    Path cacheFile = temporaryFolder.getRoot().toPath().resolve("docfix.cache");
+    Path root = temporaryFolder.newFolder("src").toPath();
+    Path kept = Files.createFile(root.resolve("Kept.java"));
+    Path deleted = Files.createFile(root.resolve("Deleted.java"));
+    FixCache.Fingerprint fingerprint = FixCache.fingerprint(CONTENT, "");
+    FixCache cache = FixCache.load(cacheFile, "encoding=");
+    cache.markClean(kept, fingerprint, "", null);
+    cache.markClean(deleted, fingerprint, "", null);
+    cache.save();
+
+    Files.delete(deleted);
+    FixCache second = FixCache.load(cacheFile, "encoding=");
+    second.walking(root);
+    assertTrue(second.isClean(kept, fingerprint));
+    second.save();
+
+    FixCache third = FixCache.load(cacheFile, "encoding=");
+    assertTrue(third.isClean(kept, fingerprint));
+    assertFalse(third.isClean(deleted, fingerprint));
+  }
+
+  @Test
+  public void testDeletedArchiveEntriesArePruned() throws IOException {
+    Path cacheFile = temporaryFolder.getRoot().toPath().resolve("docfix.cache");
+    Path source = temporaryFolder.newFile("Test.java").toPath();
+    Path archive = temporaryFolder.getRoot().toPath().resolve("sources.jar");
+    try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(archive))) {
+      zip.putNextEntry(new ZipEntry("Kept.java"));
+      zip.putNextEntry(new ZipEntry("Deleted.java"));
+    }
+    FixCache.Fingerprint fingerprint = FixCache.fingerprint(CONTENT, "");
+    try (FileSystem zip = FileSystems.newFileSystem(archive, (ClassLoader) null)) {
+      FixCache cache = FixCache.load(cacheFile, "encoding=");
+      cache.markClean(source, fingerprint, "", null);
+      cache.markClean(zip.getPath("/Kept.java"), fingerprint, "", null);
+      cache.markClean(zip.getPath("/Deleted.java"), fingerprint, "", null);
+      cache.save();
+      // An entry of the archive is not the file with the same path on disk
+      assertFalse(cache.isClean(Paths.get("/Kept.java"), fingerprint));
+
+      FixCache second = FixCache.load(cacheFile, "encoding=");
+      second.walking(zip.getPath("/"));
+      assertTrue(second.isClean(zip.getPath("/Kept.java"), fingerprint));
+      second.save();
+
+      FixCache third = FixCache.load(cacheFile, "encoding=");
+      assertTrue(third.isClean(source, fingerprint));
+      assertTrue(third.isClean(zip.getPath("/Kept.java"), fingerprint));
+      assertFalse(third.isClean(zip.getPath("/Deleted.java"), fingerprint));
+    }
+  }
+
+  @Test
+  public void testMarkDirty() throws IOException {
+    Path cacheFile = temporaryFolder.getRoot().toPath().resolve("docfix.cache");
+    Path source = temporaryFolder.newFile("Test.java").toPath();
+    FixCache.Fingerprint fingerprint = FixCache.fingerprint(CONTENT, "");
+    FixCache cache = FixCache.load(cacheFile, "encoding=");
+    cache.markClean(source, fingerprint, "", null);
+    cache.markDirty(source);
+    assertFalse(cache.isClean(source, fingerprint));
+  }
+
+  @Test
+  public void testUnchangedMetadata() throws IOException {
+    Path cacheFile = temporaryFolder.getRoot().toPath().resolve("docfix.cache");
+    Path source = temporaryFolder.newFile("Test.java").toPath();
+    Files.write(source, CONTENT);
+    Files.setLastModifiedTime(source, OLD);
+    FixCache cache = FixCache.load(cacheFile, "encoding=");
+    cache.markClean(source, FixCache.fingerprint(CONTENT, ""), "", attributes(source));
+    cache.save();
+
+    FixCache reloaded = FixCache.load(cacheFile, "encoding=");
+    assertTrue(reloaded.isUnchanged(source, "", attributes(source)));
+    assertFalse(reloaded.isUnchanged(source, "indent_style=tab", attributes(source)));
+
+    Files.setLastModifiedTime(source, FileTime.fromMillis(OLD.toMillis() + 1000));
+    assertFalse(reloaded.isUnchanged(source, "", attributes(source)));
+  }
+
+  @Test
+  public void testRecentlyModifiedFilesAreHashedAgain() throws IOException {
+    Path cacheFile = temporaryFolder.getRoot().toPath().resolve("docfix.cache");
+    Path source = temporaryFolder.newFile("Test.java").toPath();
+    Files.write(source, CONTENT);
+    FixCache.Fingerprint fingerprint = FixCache.fingerprint(CONTENT, "");
+    FixCache cache = FixCache.load(cacheFile, "encoding=");
+    cache.markClean(source, fingerprint, "", attributes(source));
+    cache.save();
+
+    FixCache reloaded = FixCache.load(cacheFile, "encoding=");
+    assertFalse(reloaded.isUnchanged(source, "", attributes(source)));
+    assertTrue(reloaded.isClean(source, fingerprint));
+  }
+
+  private static BasicFileAttributes attributes(Path file) throws IOException {
+    return Files.readAttributes(file, BasicFileAttributes.class);
+  }
+}
@@ -0,0 +1,110 @@
+package com.elharo.docfix;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FixContextTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void testSharedByConsecutiveRuns() throws IOException {
+    FixContext context = new FixContext(2);
+    Path first = module("first");
+    Path second = module("second");
+
+    DocFix.fixDirectory(first, new FixOptions().setContext(context));
+    // The first run must not shut down the shared workers
+    DocFix.fixDirectory(second, new FixOptions().setContext(context));
+
+    assertFixed(first);
+    assertFixed(second);
+  }
+
+  @Test
+  public void testSharedByConcurrentRuns()
+      throws IOException, InterruptedException, ExecutionException {
+    FixContext context = new FixContext(3);
+    ExecutorService reactor = Executors.newFixedThreadPool(4);
+    try {
+      List<Path> modules = new ArrayList<>();
+      List<Future<?>> builds = new ArrayList<>();
+      for (int i = 0; i < 8; i++) {
+        Path module = module("module" + i);
+        modules.add(module);
+        builds.add(reactor.submit(() -> {
+          DocFix.fixDirectory(module, new FixOptions().setContext(context));
+          return null;
+        }));
+      }
+      for (Future<?> build : builds) {
+        build.get();
+      }
+      for (Path module : modules) {
+        assertFixed(module);
+      }
+    } finally {
+      reactor.shutdown();
+    }
+  }
+
+  @Test
+  public void testFixAllReportsEachJob() throws IOException {
+    FixContext context = new FixContext(4);
+    Path big = module("big");
+    Path small = temporaryFolder.newFolder("small").toPath();
+    Files.writeString(small.resolve("Clean.java"), "/** Clean. */\nclass Clean {}\n",
+        StandardCharsets.UTF_8);
+    FixJob bigJob = new FixJob(Arrays.asList(big), new FixOptions().setContext(context));
+    FixJob smallJob = new FixJob(Arrays.asList(small), new FixOptions().setContext(context));
+
+    DocFix.fixAll(Arrays.asList(bigJob, smallJob));
+
+    assertFixed(big);
+    assertEquals(20, bigJob.getStatistics().getFiles());
+    assertEquals(20, bigJob.getChangedFiles().size());
+    assertEquals(1, smallJob.getStatistics().getFiles());
+    assertTrue(smallJob.getChangedFiles().isEmpty());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testThreadsMustBePositive() {
+    new FixContext(0);
+  }
+
+  private Path module(String name) throws IOException {
+    Path module = temporaryFolder.newFolder(name).toPath();
+    Files.writeString(module.resolve(".editorconfig"), "[*.java]\ncharset = utf-8\n",
+        StandardCharsets.UTF_8);
+    for (int i = 0; i < 20; i++) {
+      Path file = module.resolve("p" + (i % 3)).resolve("Test" + i + ".java");
+      Files.createDirectories(file.getParent());
+      Files.writeString(file, "/** class " + i + " */\nclass Test {}\n", StandardCharsets.UTF_8);
+    }
+    return module;
+  }
+
+  private static void assertFixed(Path module) throws IOException {
+    for (int i = 0; i < 20; i++) {
+      Path file = module.resolve("p" + (i % 3)).resolve("Test" + i + ".java");
+      assertEquals("/** Class " + i + ". */\nclass Test {}\n",
+          Files.readString(file, StandardCharsets.UTF_8));
+    }
+  }
+}
@@ -0,0 +1,121 @@
+package com.elharo.docfix;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class GitChangesTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private Path repository;
+
+  @Before
+  public void setUp() throws IOException, InterruptedException {
+    assumeTrue("git is not installed", run(temporaryFolder.getRoot().toPath(), "git", "--version"));
+    repository = temporaryFolder.newFolder("repository").toPath();
+    git("init", "-q");
+    git("config", "user.email", "test@example.com");
+    git("config", "user.name", "Test");
+    write("src/Unchanged.java");
+    write("src/Modified.java");
+    write("src/Deleted.java");
+    write("src/notes.txt");
+    write(".gitignore", "Ignored.java\n");
+    git("add", ".");
+    git("commit", "-q", "-m", "initial");
+  }
+
+  @Test
+  public void testChangedAndUntrackedFiles() throws IOException, InterruptedException {
+    write("src/Modified.java", "/** changed */\nclass Modified {}\n");
+    write("src/notes.txt", "changed\n");
+    Files.delete(repository.resolve("src/Deleted.java"));
+    write("src/Untracked.java");
+    write("src/Ignored.java");
+    write("src/Staged.java");
+    git("add", "src/Staged.java");
+
+    List<Path> changed = GitChanges.changedJavaFiles(repository.resolve("src"), "HEAD");
+
+    Set<Path> expected = new HashSet<>();
+    expected.add(repository.resolve("src/Modified.java"));
+    expected.add(repository.resolve("src/Untracked.java"));
+    expected.add(repository.resolve("src/Staged.java"));
+    assertEquals(expected, new HashSet<>(changed));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRefIsNeverAnOption() throws IOException {
+    GitChanges.changedJavaFiles(repository.resolve("src"), "--output=/tmp/docfix-diff");
+  }
+
+  @Test
+  public void testRunRejectsOptionAsRef() {
+    assertEquals(1, DocFix.run(new String[] {"--since", "--output=x", "src"}, repository));
+  }
+
+  @Test
+  public void testFixDirectorySinceRef() throws IOException, InterruptedException {
+    write("src/Modified.java", "/** changed */\nclass Modified {}\n");
+    write("src/Unchanged.java", "/** unchanged */\nclass Unchanged {}\n");
+    git("commit", "-q", "-a", "-m", "second");
+    write("src/Modified.java", "/** changed again */\nclass Modified {}\n");
+
+    DocFix.fixDirectory(repository.resolve("src"), new FixOptions().setSince("HEAD"));
+
+    assertEquals("/** Changed again. */\nclass Modified {}\n",
+        Files.readString(repository.resolve("src/Modified.java"), StandardCharsets.UTF_8));
+    assertEquals("/** unchanged */\nclass Unchanged {}\n",
+        Files.readString(repository.resolve("src/Unchanged.java"), StandardCharsets.UTF_8));
+  }
+
+  @Test(expected = IOException.class)
+  public void testUnknownRef() throws IOException {
+    GitChanges.changedJavaFiles(repository, "no-such-ref");
+  }
+
+  private void write(String name) throws IOException {
+    write(name, "/** Clean. */\nclass Test {}\n");
+  }
+
+  private void write(String name, String content) throws IOException {
+    Path file = repository.resolve(name);
+    Files.createDirectories(file.getParent());
+    Files.writeString(file, content, StandardCharsets.UTF_8);
+  }
+
+  private void git(String... arguments) throws IOException, InterruptedException {
+    String[] command = new String[arguments.length + 1];
+    command[0] = "git";
+    System.arraycopy(arguments, 0, command, 1, arguments.length);
+    if (!run(repository, command)) {
+      throw new IOException("git " + arguments[0] + " failed");
+    }
+  }
+
+  private static boolean run(Path directory, String... command) throws InterruptedException {
+    try {
+      Process process = new ProcessBuilder(command)
+          .directory(directory.toFile())
+          .redirectErrorStream(true)
+          .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+          .start();
+      return process.waitFor() == 0;
+    } catch (IOException ex) {
+      return false;
+    }
+  }
+}
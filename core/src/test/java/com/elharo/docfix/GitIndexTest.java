@@ -0,0 +1,175 @@
+package com.elharo.docfix;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class GitIndexTest {
+
+  private static final String UNFIXED = "/** unfixed */\nclass Test {}\n";
+  private static final String FIXED = "/** Unfixed. */\nclass Test {}\n";
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private Path repository;
+
+  @Before
+  public void setUp() throws IOException, InterruptedException {
+    assumeTrue("git is not installed", run(temporaryFolder.getRoot().toPath(), "git", "--version"));
+    repository = temporaryFolder.newFolder("repository").toPath();
+    git("init", "-q");
+    git("config", "user.email", "test@example.com");
+    git("config", "user.name", "Test");
+    write("src/Committed.java", UNFIXED);
+    git("add", ".");
+    git("commit", "-q", "-m", "initial");
+  }
+
+  @Test
+  public void testStagedJavaFiles() throws IOException, InterruptedException {
+    write("src/Committed.java", "/** changed */\nclass Test {}\n");
+    write("src/Added.java", UNFIXED);
+    write("src/notes.txt", "notes\n");
+    write("src/Unstaged.java", UNFIXED);
+    git("add", "src/Committed.java", "src/Added.java", "src/notes.txt");
+
+    List<GitIndex.StagedFile> staged = GitIndex.stagedJavaFiles(repository.resolve("src"));
+
+    assertEquals(2, staged.size());
+    assertEquals("Added.java", staged.get(0).path);
+    assertEquals("Committed.java", staged.get(1).path);
+    assertEquals("100644", staged.get(0).mode);
+  }
+
+  @Test
+  public void testBlobReader() throws IOException {
+    String blob = GitIndex.writeBlob(repository, UNFIXED.getBytes(StandardCharsets.UTF_8));
+    try (GitIndex.BlobReader reader = new GitIndex.BlobReader(repository)) {
+      assertEquals(UNFIXED, new String(reader.read(blob), StandardCharsets.UTF_8));
+      assertEquals(UNFIXED, new String(reader.read(blob), StandardCharsets.UTF_8));
+    }
+  }
+
+  @Test
+  public void testFixStagedLeavesWorkTree() throws IOException, InterruptedException {
+    write("src/Added.java", UNFIXED);
+    git("add", "src/Added.java");
+
+    DocFix.fixDirectory(repository, new FixOptions().setStaged(true));
+
+    assertEquals(FIXED, staged("src/Added.java"));
+    assertEquals(UNFIXED, read("src/Added.java"));
+    assertEquals(UNFIXED, read("src/Committed.java"));
+  }
+
+  @Test
+  public void testFixStagedUpdatesCleanWorkTree() throws IOException, InterruptedException {
+    write("src/Added.java", UNFIXED);
+    git("add", "src/Added.java");
+
+    DocFix.fixDirectory(repository, new FixOptions().setStaged(true).setUpdateWorkTree(true));
+
+    assertEquals(FIXED, staged("src/Added.java"));
+    assertEquals(FIXED, read("src/Added.java"));
+  }
+
+  @Test
+  public void testFixStagedKeepsUnstagedChanges() throws IOException, InterruptedException {
+    write("src/Added.java", UNFIXED);
+    git("add", "src/Added.java");
+    write("src/Added.java", "/** work in progress */\nclass Test {}\n");
+
+    DocFix.fixDirectory(repository, new FixOptions().setStaged(true).setUpdateWorkTree(true));
+
+    assertEquals(FIXED, staged("src/Added.java"));
+    assertEquals("/** work in progress */\nclass Test {}\n", read("src/Added.java"));
+  }
+
+  @Test
+  public void testFixStagedInSubdirectory() throws IOException, InterruptedException {
+    write("src/Added.java", UNFIXED);
+    git("add", "src/Added.java");
+
+    List<GitIndex.StagedFile> staged = GitIndex.stagedJavaFiles(repository.resolve("src"));
+    assertEquals("Added.java", staged.get(0).path);
+    assertEquals("src/Added.java", staged.get(0).indexPath);
+
+    DocFix.fixDirectory(repository.resolve("src"), new FixOptions().setStaged(true));
+
+    assertEquals(FIXED, staged("src/Added.java"));
+    assertEquals(Arrays.asList("src/Added.java"), stagedPaths());
+  }
+
+  @Test
+  public void testFixStagedDryrun() throws IOException, InterruptedException {
+    write("src/Added.java", UNFIXED);
+    git("add", "src/Added.java");
+
+    DocFix.fixDirectory(repository, new FixOptions().setStaged(true).setDryrun(true));
+
+    assertEquals(UNFIXED, staged("src/Added.java"));
+  }
+
+  private String staged(String name) throws IOException {
+    for (GitIndex.StagedFile file : GitIndex.stagedJavaFiles(repository)) {
+      if (file.path.equals(name)) {
+        try (GitIndex.BlobReader reader = new GitIndex.BlobReader(repository)) {
+          return new String(reader.read(file.blob), StandardCharsets.UTF_8);
+        }
+      }
+    }
+    throw new AssertionError(name + " is not staged");
+  }
+
+  private List<String> stagedPaths() throws IOException {
+    List<String> paths = new ArrayList<>();
+    for (GitIndex.StagedFile file : GitIndex.stagedJavaFiles(repository)) {
+      paths.add(file.path);
+    }
+    return paths;
+  }
+
+  private String read(String name) throws IOException {
+    return Files.readString(repository.resolve(name), StandardCharsets.UTF_8);
+  }
+
+  private void write(String name, String content) throws IOException {
+    Path file = repository.resolve(name);
+    Files.createDirectories(file.getParent());
+    Files.writeString(file, content, StandardCharsets.UTF_8);
+  }
+
+  private void git(String... arguments) throws IOException, InterruptedException {
+    String[] command = new String[arguments.length + 1];
+    command[0] = "git";
+    System.arraycopy(arguments, 0, command, 1, arguments.length);
+    if (!run(repository, command)) {
+      throw new IOException("git " + arguments[0] + " failed");
+    }
+  }
+
+  private static boolean run(Path directory, String... command) throws InterruptedException {
+    try {
+      Process process = new ProcessBuilder(command)
+          .directory(directory.toFile())
+          .redirectErrorStream(true)
+          .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+          .start();
+      return process.waitFor() == 0;
+    } catch (IOException ex) {
+      return false;
+    }
+  }
+}
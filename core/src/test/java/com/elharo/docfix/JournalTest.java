@@ -0,0 +1,148 @@
+package com.elharo.docfix;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JournalTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void testResume() throws IOException {
+    Path journalFile = temporaryFolder.getRoot().toPath().resolve("docfix.journal");
+    Path source = temporaryFolder.newFile("Test.java").toPath();
+    try (Journal journal = Journal.open(journalFile, "encoding=", false)) {
+      assertFalse(journal.isDone(source, attributes(source)));
+      journal.record(source, attributes(source));
+    }
+
+    try (Journal journal = Journal.open(journalFile, "encoding=", true)) {
+      assertTrue(journal.isDone(source, attributes(source)));
+    }
+  }
+
+  @Test
+  public void testWithoutResumeStartsOver() throws IOException {
+    Path journalFile = temporaryFolder.getRoot().toPath().resolve("docfix.journal");
+    Path source = temporaryFolder.newFile("Test.java").toPath();
+    try (Journal journal = Journal.open(journalFile, "encoding=", false)) {
+      journal.record(source, attributes(source));
+    }
+
+    try (Journal journal = Journal.open(journalFile, "encoding=", false)) {
+      assertFalse(journal.isDone(source, attributes(source)));
+    }
+  }
+
+  @Test
+  public void testConfigurationChangeStartsOver() throws IOException {
+    Path journalFile = temporaryFolder.getRoot().toPath().resolve("docfix.journal");
+    Path source = temporaryFolder.newFile("Test.java").toPath();
+    try (Journal journal = Journal.open(journalFile, "encoding=", false)) {
+      journal.record(source, attributes(source));
+    }
+
+    try (Journal journal = Journal.open(journalFile, "encoding=UTF-8", true)) {
+      assertFalse(journal.isDone(source, attributes(source)));
+    }
+  }
+
+  @Test
+  public void testChangedFileIsNotDone() throws IOException {
+    Path journalFile = temporaryFolder.getRoot().toPath().resolve("docfix.journal");
+    Path source = temporaryFolder.newFile("Test.java").toPath();
+    try (Journal journal = Journal.open(journalFile, "encoding=", false)) {
+      journal.record(source, attributes(source));
+    }
+    Files.writeString(source, "class Test {}\n", StandardCharsets.UTF_8);
+
+    try (Journal journal = Journal.open(journalFile, "encoding=", true)) {
+      assertFalse(journal.isDone(source, attributes(source)));
+    }
+  }
+
+  @Test
+  public void testTornLineIsIgnored() throws IOException {
+    Path journalFile = temporaryFolder.getRoot().toPath().resolve("docfix.journal");
+    Path first = temporaryFolder.newFile("First.java").toPath();
+    Path second = temporaryFolder.newFile("Second.java").toPath();
+    try (Journal journal = Journal.open(journalFile, "encoding=", false)) {
+      journal.record(first, attributes(first));
+    }
+    String line = "0\t0\t" + second.toAbsolutePath();
+    Files.writeString(journalFile, line.substring(0, line.length() - 3),
+        StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+    try (Journal journal = Journal.open(journalFile, "encoding=", true)) {
+      assertTrue(journal.isDone(first, attributes(first)));
+      assertFalse(journal.isDone(second, attributes(second)));
+    }
+  }
+
+  @Test
+  public void testCompletedJournalIsDeleted() throws IOException {
+    Path journalFile = temporaryFolder.getRoot().toPath().resolve("docfix.journal");
+    try (Journal journal = Journal.open(journalFile, "encoding=", false)) {
+      journal.complete();
+    }
+    assertFalse(Files.exists(journalFile));
+  }
+
+  @Test
+  public void testResumeInterruptedRun() throws IOException {
+    Path root = temporaryFolder.newFolder("src").toPath();
+    Path finished = root.resolve("Finished.java");
+    Path remaining = root.resolve("Remaining.java");
+    Files.writeString(finished, "/** finished */\nclass Finished {}\n", StandardCharsets.UTF_8);
+    Files.writeString(remaining, "/** remaining */\nclass Remaining {}\n", StandardCharsets.UTF_8);
+    Path journalFile = temporaryFolder.getRoot().toPath().resolve("docfix.journal");
+    // An interrupted run that got as far as Finished.java
+    try (Journal journal = Journal.open(journalFile, "encoding=, mode=fix", false)) {
+      journal.record(finished, attributes(finished));
+    }
+
+    DocFix.fixDirectory(root, new FixOptions().setJournalFile(journalFile).setResume(true));
+
+    assertEquals("/** finished */\nclass Finished {}\n",
+        Files.readString(finished, StandardCharsets.UTF_8));
+    assertEquals("/** Remaining. */\nclass Remaining {}\n",
+        Files.readString(remaining, StandardCharsets.UTF_8));
+    assertFalse(Files.exists(journalFile));
+  }
+
+  @Test
+  public void testCheckDoesNotRecordFilesThatNeedFixes() throws IOException {
+    Path root = temporaryFolder.newFolder("checked").toPath();
+    Path file = root.resolve("Test.java");
+    Files.writeString(file, "/** dirty */\nclass Test {}\n", StandardCharsets.UTF_8);
+    Path journalFile = temporaryFolder.getRoot().toPath().resolve("docfix.journal");
+
+    // Fail fast stops the run, so the journal is left behind as if interrupted
+    assertEquals(1, DocFix.run(new String[] {"--check", "--fail-fast", "--journal",
+        journalFile.toString(), root.toString()}, root));
+    assertTrue(Files.exists(journalFile));
+    assertEquals(1, DocFix.run(new String[] {"--check", "--fail-fast", "--journal",
+        journalFile.toString(), "--resume", root.toString()}, root));
+
+    // A journal from a check is not resumed by a run that writes files
+    assertEquals(0, DocFix.run(new String[] {"--journal", journalFile.toString(), "--resume",
+        root.toString()}, root));
+    assertEquals("/** Dirty. */\nclass Test {}\n", Files.readString(file, StandardCharsets.UTF_8));
+  }
+
+  private static BasicFileAttributes attributes(Path file) throws IOException {
+    return Files.readAttributes(file, BasicFileAttributes.class);
+  }
+}
@@ -0,0 +1,81 @@
+package com.elharo.docfix;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ResultCacheTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private static final byte[] KEY = FixCache.hash(new byte[] {1, 2, 3}, "settings");
+
+  @Test
+  public void testMiss() throws IOException {
+    ResultCache cache = new ResultCache(temporaryFolder.newFolder().toPath());
+    assertNull(cache.get(KEY));
+  }
+
+  @Test
+  public void testUnchanged() throws IOException {
+    Path directory = temporaryFolder.newFolder().toPath();
+    new ResultCache(directory).putUnchanged(KEY);
+    assertSame(ResultCache.Result.UNCHANGED, new ResultCache(directory).get(KEY));
+  }
+
+  @Test
+  public void testFixed() throws IOException {
+    Path directory = temporaryFolder.newFolder().toPath();
+    byte[] fixed = "/** Fixed. */\n".getBytes(StandardCharsets.UTF_8);
+    new ResultCache(directory).putFixed(KEY, fixed);
+    assertArrayEquals(fixed, new ResultCache(directory).get(KEY).fixed);
+  }
+
+  @Test
+  public void testMalformedEntryIsAMiss() throws IOException {
+    Path directory = temporaryFolder.newFolder().toPath();
+    ResultCache cache = new ResultCache(directory);
+    cache.putUnchanged(KEY);
+    for (Path entry : entries(directory)) {
+      Files.write(entry, new byte[] {'?'});
+    }
+    assertNull(cache.get(KEY));
+  }
+
+  @Test
+  public void testSharedAcrossRuns() throws IOException {
+    Path results = temporaryFolder.newFolder("results").toPath();
+    Path first = temporaryFolder.newFolder("first").toPath();
+    Path second = temporaryFolder.newFolder("second").toPath();
+    String code = "/** hello */\npublic class Test {}\n";
+    Files.writeString(first.resolve("Test.java"), code, StandardCharsets.UTF_8);
+    Files.writeString(second.resolve("Test.java"), code, StandardCharsets.UTF_8);
+    FixOptions options = new FixOptions().setResultCacheDirectory(results);
+
+    DocFix.fixDirectory(first, options);
+    assertEquals(1, entries(results).size());
+
+    DocFix.fixDirectory(second, options);
+    assertEquals("/** Hello. */\npublic class Test {}\n",
+        Files.readString(second.resolve("Test.java"), StandardCharsets.UTF_8));
+  }
+
+  private static List<Path> entries(Path directory) throws IOException {
+    try (Stream<Path> files = Files.walk(directory)) {
+      return files.filter(Files::isRegularFile).collect(Collectors.toList());
+    }
+  }
+}
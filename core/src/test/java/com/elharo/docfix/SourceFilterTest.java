@@ -0,0 +1,93 @@
+package com.elharo.docfix;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+
+public class SourceFilterTest {
+
+  @Test
+  public void testNoPatternsSelectEverything() {
+    SourceFilter filter = SourceFilter.compile(Collections.emptyList(), Collections.emptyList());
+    assertTrue(filter.includes(Paths.get("com/example/Test.java")));
+    assertFalse(filter.prunes(Paths.get("com/example")));
+  }
+
+  @Test
+  public void testAnyDirectories() {
+    SourceFilter filter = filter(Arrays.asList("com/**/api/*.java"), Collections.emptyList());
+    assertTrue(filter.includes(Paths.get("com/api/Test.java")));
+    assertTrue(filter.includes(Paths.get("com/example/deep/api/Test.java")));
+    assertFalse(filter.includes(Paths.get("com/example/impl/Test.java")));
+    assertFalse(filter.includes(Paths.get("org/api/Test.java")));
+  }
+
+  @Test
+  public void testSingleCharacterAndNameWildcards() {
+    SourceFilter filter = filter(Arrays.asList("**/Test?.java", "**/*Impl.java"),
+        Collections.emptyList());
+    assertTrue(filter.includes(Paths.get("a/Test1.java")));
+    assertFalse(filter.includes(Paths.get("a/Test12.java")));
+    assertTrue(filter.includes(Paths.get("FooImpl.java")));
+    assertFalse(filter.includes(Paths.get("Foo.java")));
+  }
+
+  @Test
+  public void testPatternWithoutDirectoryMatchesOnlyTopLevel() {
+    SourceFilter filter = filter(Arrays.asList("*.java"), Collections.emptyList());
+    assertTrue(filter.includes(Paths.get("Test.java")));
+    assertFalse(filter.includes(Paths.get("com/Test.java")));
+  }
+
+  @Test
+  public void testRegexCharactersAreLiteral() {
+    SourceFilter filter = filter(Arrays.asList("a+b/(x).java"), Collections.emptyList());
+    assertTrue(filter.includes(Paths.get("a+b/(x).java")));
+    assertFalse(filter.includes(Paths.get("aab/x.java")));
+  }
+
+  @Test
+  public void testExcludesWin() {
+    SourceFilter filter = filter(Arrays.asList("com/**"), Arrays.asList("**/generated/"));
+    assertTrue(filter.includes(Paths.get("com/example/Test.java")));
+    assertFalse(filter.includes(Paths.get("com/generated/Test.java")));
+    assertFalse(filter.includes(Paths.get("com/example/generated/sub/Test.java")));
+  }
+
+  @Test
+  public void testExcludedDirectoryIsPruned() {
+    SourceFilter filter = filter(Collections.emptyList(),
+        Arrays.asList("com/vendor/**", "**/*Generated.java"));
+    assertTrue(filter.prunes(Paths.get("com/vendor")));
+    assertTrue(filter.prunes(Paths.get("com/vendor/lib")));
+    assertFalse(filter.prunes(Paths.get("com")));
+    assertFalse(filter.prunes(Paths.get("com/example")));
+  }
+
+  @Test
+  public void testDirectoryOutsideIncludesIsPruned() {
+    SourceFilter filter = filter(Arrays.asList("com/example/**"), Collections.emptyList());
+    assertFalse(filter.prunes(Paths.get("com")));
+    assertFalse(filter.prunes(Paths.get("com/example")));
+    assertFalse(filter.prunes(Paths.get("com/example/sub")));
+    assertTrue(filter.prunes(Paths.get("org")));
+    assertTrue(filter.prunes(Paths.get("com/other")));
+  }
+
+  @Test
+  public void testDirectoryMatchedByWholeIncludeIsPruned() {
+    // The pattern names the directory itself, not any file in it
+    SourceFilter filter = filter(Arrays.asList("com/example"), Collections.emptyList());
+    assertFalse(filter.prunes(Paths.get("com")));
+    assertTrue(filter.prunes(Paths.get("com/example")));
+  }
+
+  private static SourceFilter filter(List<String> includes, List<String> excludes) {
+    return SourceFilter.compile(includes, excludes);
+  }
+}
@@ -2,6 +2,7 @@ package com.elharo.docfix;
 
 import org.junit.Test;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -71,4 +72,11 @@ public class StringsTest {
     assertFalse("Should not detect URL not at end of multiline text", 
         Strings.endsWithURL("Visit https://example.com\nand then do something else"));
   }
-}
\ No newline at end of file
+
+  @Test
+  public void testFindIndent_tabWidth() {
+    assertEquals(6, Strings.findIndent("\t  x"));
+    assertEquals(4, Strings.findIndent("\t  x", 2));
+    assertEquals(10, Strings.findIndent("  \tx", 8));
+  }
+}
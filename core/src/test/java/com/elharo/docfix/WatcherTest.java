@@ -0,0 +1,115 @@
+package com.elharo.docfix;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class WatcherTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void testFixesSavedFiles() throws IOException, InterruptedException {
+    Path root = temporaryFolder.newFolder("src").toPath();
+    Path file = root.resolve("Test.java");
+    try (FixSession session = new FixSession(new FixOptions());
+        Watcher watcher = new Watcher(root, session, 100)) {
+      Files.writeString(file, "/** unsaved */\nclass Test {}\n", StandardCharsets.UTF_8);
+      Files.writeString(file, "/** saved */\nclass Test {}\n", StandardCharsets.UTF_8);
+
+      assertEquals(1, watcher.processBatch(30, TimeUnit.SECONDS));
+      assertEquals("/** Saved. */\nclass Test {}\n",
+          Files.readString(file, StandardCharsets.UTF_8));
+    }
+  }
+
+  @Test
+  public void testSkipsExcludedFiles() throws IOException, InterruptedException {
+    Path root = temporaryFolder.newFolder("src").toPath();
+    Path generated = Files.createDirectories(root.resolve("generated"));
+    Path excluded = generated.resolve("Generated.java");
+    Path file = root.resolve("Test.java");
+    FixOptions options = new FixOptions().setExcludes(Arrays.asList("generated/"));
+    try (FixSession session = new FixSession(options);
+        Watcher watcher = new Watcher(root, session, 100)) {
+      Files.writeString(excluded, "/** generated */\nclass Generated {}\n",
+          StandardCharsets.UTF_8);
+      Files.writeString(file, "/** saved */\nclass Test {}\n", StandardCharsets.UTF_8);
+      Path nested = Files.createDirectories(generated.resolve("nested"));
+      Files.writeString(nested.resolve("Nested.java"), "/** nested */\nclass Nested {}\n",
+          StandardCharsets.UTF_8);
+
+      int checked = 0;
+      for (int i = 0; i < 3 && checked == 0; i++) {
+        checked = watcher.processBatch(30, TimeUnit.SECONDS);
+      }
+      assertEquals(1, checked);
+      assertEquals("/** Saved. */\nclass Test {}\n",
+          Files.readString(file, StandardCharsets.UTF_8));
+      assertEquals("/** generated */\nclass Generated {}\n",
+          Files.readString(excluded, StandardCharsets.UTF_8));
+    }
+  }
+
+  @Test
+  public void testIgnoresOwnWrites() throws IOException, InterruptedException {
+    Path root = temporaryFolder.newFolder("src").toPath();
+    Path file = root.resolve("Test.java");
+    Path other = root.resolve("Other.java");
+    try (FixSession session = new FixSession(new FixOptions());
+        Watcher watcher = new Watcher(root, session, 100)) {
+      Files.writeString(file, "/** saved */\nclass Test {}\n", StandardCharsets.UTF_8);
+      assertEquals(1, watcher.processBatch(30, TimeUnit.SECONDS));
+
+      // The rewrite of Test.java shows up alongside this unrelated change
+      Files.writeString(other, "/** other */\nclass Other {}\n", StandardCharsets.UTF_8);
+      int checked = 0;
+      for (int i = 0; i < 3 && checked == 0; i++) {
+        checked = watcher.processBatch(30, TimeUnit.SECONDS);
+      }
+      assertEquals(1, checked);
+      assertEquals("/** Other. */\nclass Other {}\n",
+          Files.readString(other, StandardCharsets.UTF_8));
+    }
+  }
+
+  @Test
+  public void testWatchesNewDirectories() throws IOException, InterruptedException {
+    Path root = temporaryFolder.newFolder("src").toPath();
+    try (FixSession session = new FixSession(new FixOptions());
+        Watcher watcher = new Watcher(root, session, 100)) {
+      Path directory = Files.createDirectory(root.resolve("pkg"));
+      Path file = directory.resolve("Test.java");
+      Files.writeString(file, "/** nested */\nclass Test {}\n", StandardCharsets.UTF_8);
+
+      int checked = 0;
+      for (int i = 0; i < 3 && checked == 0; i++) {
+        checked = watcher.processBatch(30, TimeUnit.SECONDS);
+      }
+      assertEquals(1, checked);
+      assertEquals("/** Nested. */\nclass Test {}\n",
+          Files.readString(file, StandardCharsets.UTF_8));
+    }
+  }
+
+  @Test
+  public void testIgnoresOtherFiles() throws IOException, InterruptedException {
+    Path root = temporaryFolder.newFolder("src").toPath();
+    Path file = root.resolve("notes.txt");
+    try (FixSession session = new FixSession(new FixOptions());
+        Watcher watcher = new Watcher(root, session, 100)) {
+      Files.writeString(file, "/** notes */\n", StandardCharsets.UTF_8);
+      assertEquals(0, watcher.processBatch(30, TimeUnit.SECONDS));
+      assertEquals("/** notes */\n", Files.readString(file, StandardCharsets.UTF_8));
+    }
+  }
+}
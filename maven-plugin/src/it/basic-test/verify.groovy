@@ -22,6 +22,12 @@ try {
         throw new FileNotFoundException("Expected '@return the result of processing' but was not found");
     }
     
+    // Incremental builds record when the goal ran
+    Path stateFile = Paths.get(basedir.toString(), "target/docfix.state");
+    if (!Files.exists(stateFile)) {
+        throw new FileNotFoundException("Expected incremental build state in target/docfix.state");
+    }
+    
     return true;
 } catch (Exception e) {
     e.printStackTrace();
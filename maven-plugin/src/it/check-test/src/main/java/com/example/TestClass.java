@@ -0,0 +1,16 @@
+package com.example;
+
+/**
+ * test class with javadoc issues
+ * @author Someone
+ */
+public class TestClass {
+    /**
+     * some method
+     * @param value The value to process
+     * @return The result of processing
+     */
+    public String test(String value) {
+        return value;
+    }
+}
\ No newline at end of file
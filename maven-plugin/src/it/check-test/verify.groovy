@@ -0,0 +1,22 @@
+import java.io.*;
+import java.nio.file.*;
+
+try {
+    Path testFile = Paths.get(basedir.toString(), "src/main/java/com/example/TestClass.java");
+    String content = Files.readString(testFile);
+
+    // The check goal must not modify anything
+    if (!content.contains("test class with javadoc issues")) {
+        throw new IllegalStateException("Check goal modified the source file");
+    }
+
+    String log = new File(basedir, "build.log").text;
+    if (!log.contains("have Javadoc comments that need fixes")) {
+        throw new IllegalStateException("Expected the check failure in the build log");
+    }
+
+    return true;
+} catch (Exception e) {
+    e.printStackTrace();
+    return false;
+}
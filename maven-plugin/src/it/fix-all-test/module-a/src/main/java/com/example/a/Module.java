@@ -0,0 +1,7 @@
+package com.example.a;
+
+/**
+ * class in module a
+ */
+public class Module {
+}
@@ -0,0 +1,7 @@
+package com.example.b;
+
+/**
+ * class in module b
+ */
+public class Module {
+}
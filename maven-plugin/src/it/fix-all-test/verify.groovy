@@ -0,0 +1,22 @@
+import java.io.*;
+import java.nio.file.*;
+
+try {
+    for (String module : ["a", "b"]) {
+        Path file = Paths.get(basedir.toString(), "module-" + module,
+                "src/main/java/com/example/" + module + "/Module.java");
+        if (!Files.readString(file).contains("Class in module " + module + ".")) {
+            throw new FileNotFoundException("Expected module-" + module + " to be fixed");
+        }
+    }
+
+    String log = new File(basedir, "build.log").text;
+    if (!log.contains("module-a: 1 file(s), 1 changed") || !log.contains("module-b: 1 file(s), 1 changed")) {
+        throw new IllegalStateException("Expected a summary for each module in the build log");
+    }
+
+    return true;
+} catch (Exception e) {
+    e.printStackTrace();
+    return false;
+}
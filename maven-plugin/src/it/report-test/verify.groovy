@@ -0,0 +1,22 @@
+import java.io.*;
+import java.nio.file.*;
+
+try {
+    Path report = Paths.get(basedir.toString(), "target/docfix-report.json");
+    String json = Files.readString(report);
+    if (!json.contains("\"goal\": \"fix\"")
+            || !json.contains("\"module\": \"com.elharo.docfix.it:report-test\", \"files\": 1")
+            || !json.contains("\"changed\": 1")) {
+        throw new IllegalStateException("Unexpected report: " + json);
+    }
+
+    String log = new File(basedir, "build.log").text;
+    if (!log.contains("DocFix: 1 file(s) scanned")) {
+        throw new IllegalStateException("Expected the summary in the build log");
+    }
+
+    return true;
+} catch (Exception e) {
+    e.printStackTrace();
+    return false;
+}
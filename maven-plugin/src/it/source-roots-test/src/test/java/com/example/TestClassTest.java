@@ -0,0 +1,7 @@
+package com.example;
+
+/**
+ * tests for the test class
+ */
+public class TestClassTest {
+}
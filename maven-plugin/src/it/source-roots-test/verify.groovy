@@ -0,0 +1,19 @@
+import java.io.*;
+import java.nio.file.*;
+
+try {
+    Path mainFile = Paths.get(basedir.toString(), "src/main/java/com/example/TestClass.java");
+    if (!Files.readString(mainFile).contains("Test class with javadoc issues.")) {
+        throw new FileNotFoundException("Expected the main source root to be fixed");
+    }
+
+    Path testFile = Paths.get(basedir.toString(), "src/test/java/com/example/TestClassTest.java");
+    if (!Files.readString(testFile).contains("Tests for the test class.")) {
+        throw new FileNotFoundException("Expected the test source root to be fixed");
+    }
+
+    return true;
+} catch (Exception e) {
+    e.printStackTrace();
+    return false;
+}
@@ -0,0 +1,67 @@
+package com.elharo.docfix;
+
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Maven plugin goal that fails the build if any Java source file has Javadoc
+ * comments that the fix goal would change. Files are fixed only in memory,
+ * so nothing is modified or printed. Takes the same parameters as the fix goal,
+ * except that dryrun and incremental have no effect.
+ */
+@Mojo(name = "check", defaultPhase = LifecyclePhase.PROCESS_SOURCES, threadSafe = true)
+public class CheckMojo extends DocFixMojo {
+
+    /**
+     * Whether to stop at the first file that needs fixes instead of finding all of them.
+     */
+    @Parameter(property = "docfix.failFast", defaultValue = "false")
+    private boolean failFast;
+
+    @Override
+    String goal() {
+        return "check";
+    }
+
+    @Override
+    void process(List<Path> roots, FixOptions options, Charset charset)
+            throws IOException, MojoFailureException {
+        fail(DocFix.fixDirectories(roots, options.setCheck(true).setFailFast(failFast)));
+    }
+
+    @Override
+    void processArchive(Path archive, Path output, FixOptions options)
+            throws IOException, MojoFailureException {
+        fail(DocFix.fixArchive(archive, null, options.setOutputDirectory(null).setSince(null)
+                .setCheck(true).setFailFast(failFast)));
+    }
+
+    /**
+     * Fails the build if any file, or archive entry, needs fixes.
+     */
+    private void fail(List<?> violations) throws MojoFailureException {
+        if (violations.isEmpty()) {
+            return;
+        }
+
+        StringBuilder message = new StringBuilder();
+        if (failFast) {
+            message.append("Javadoc comments need fixes in:");
+        } else {
+            message.append(violations.size())
+                    .append(" file(s) have Javadoc comments that need fixes:");
+        }
+        for (Object file : violations) {
+            message.append(System.lineSeparator()).append("  ").append(file);
+        }
+        message.append(System.lineSeparator()).append("Run docfix:fix to fix them.");
+        throw new MojoFailureException(message.toString());
+    }
+}
@@ -1,22 +1,36 @@
 package com.elharo.docfix;
 
+import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.descriptor.PluginDescriptor;
+import org.apache.maven.plugins.annotations.Component;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.build.BuildContext;
+import org.codehaus.plexus.util.Scanner;
 
 import java.io.File;
 import java.io.IOException;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
 /**
  * Maven plugin goal that fixes Javadoc comments in Java source files.
  */
-@Mojo(name = "fix", defaultPhase = LifecyclePhase.PROCESS_SOURCES)
+@Mojo(name = "fix", defaultPhase = LifecyclePhase.PROCESS_SOURCES, threadSafe = true)
 public class DocFixMojo extends AbstractMojo {
 
     /**
@@ -25,12 +39,41 @@ public class DocFixMojo extends AbstractMojo {
     @Parameter(defaultValue = "${project}", readonly = true, required = true)
     private MavenProject project;
 
+    /**
+     * The build session, which holds the state shared by the executions for all modules.
+     */
+    @Parameter(defaultValue = "${session}", readonly = true, required = true)
+    private MavenSession session;
+
     /**
      * The source directory to process. Defaults to src/main/java.
+     * Ignored when any of the include...SourceRoots parameters is set.
      */
     @Parameter(defaultValue = "${project.basedir}/src/main/java")
     private File sourceDirectory;
 
+    /**
+     * Whether to process the project's compile source roots that are not
+     * generated, instead of only the source directory.
+     */
+    @Parameter(property = "docfix.includeCompileSourceRoots", defaultValue = "false")
+    private boolean includeCompileSourceRoots;
+
+    /**
+     * Whether to process the project's test source roots that are not generated.
+     * Roots that other plugins add in the generate-test-sources phase exist
+     * only if the goal is bound to a later phase.
+     */
+    @Parameter(property = "docfix.includeTestSourceRoots", defaultValue = "false")
+    private boolean includeTestSourceRoots;
+
+    /**
+     * Whether to process the compile and test source roots in the build directory,
+     * which other plugins usually generate.
+     */
+    @Parameter(property = "docfix.includeGeneratedSourceRoots", defaultValue = "false")
+    private boolean includeGeneratedSourceRoots;
+
     /**
      * Character encoding to use when reading and writing files.
      * Defaults to UTF-8.
@@ -44,27 +87,503 @@ public class DocFixMojo extends AbstractMojo {
     @Parameter(property = "docfix.dryrun", defaultValue = "false")
     private boolean dryrun;
 
+    /**
+     * Whether to remember which files are already clean and skip them
+     * in later builds as long as they do not change.
+     */
+    @Parameter(property = "docfix.cache", defaultValue = "true")
+    private boolean cache;
+
+    /**
+     * The file that records which source files are already clean.
+     */
+    @Parameter(defaultValue = "${project.build.directory}/docfix.cache")
+    private File cacheFile;
+
+    /**
+     * A directory of fix results keyed by file contents, DocFix version, and
+     * configuration, which can be shared by many machines. Not used by default.
+     */
+    @Parameter(property = "docfix.resultCache")
+    private File resultCacheDirectory;
+
+    /**
+     * If set, only the Java files that git reports as changed since this ref,
+     * plus untracked files, are processed, and the source directory is not walked.
+     */
+    @Parameter(property = "docfix.since")
+    private String since;
+
+    /**
+     * Whether to process only the sources added or modified since the last run,
+     * and skip the module entirely when none were.
+     */
+    @Parameter(property = "docfix.incremental", defaultValue = "true")
+    private boolean incremental;
+
+    /**
+     * The file that records when the goal last ran, for incremental builds.
+     */
+    @Parameter(defaultValue = "${project.build.directory}/docfix.state")
+    private File stateFile;
+
+    /**
+     * The file that records the metadata of the source directories after the last
+     * run, so an incremental build can skip a module whose sources did not change
+     * without walking them.
+     */
+    @Parameter(defaultValue = "${project.build.directory}/docfix.fingerprint")
+    private File fingerprintFile;
+
+    /**
+     * Ant-style patterns, relative to each source root, that select the Java files
+     * to process, such as com/example/**. By default every Java file is processed.
+     */
+    @Parameter(property = "docfix.includes")
+    private List<String> includes;
+
+    /**
+     * Ant-style patterns, relative to each source root, for Java files to skip,
+     * such as **&#47;generated/. Excluded directories are not walked.
+     */
+    @Parameter(property = "docfix.excludes")
+    private List<String> excludes;
+
+    /**
+     * The number of threads that fix files concurrently, either a number or a
+     * multiple of the available processors such as 1C or 0.5C, as with Maven's -T
+     * option. The threads are shared by all modules of the build, so the first
+     * execution in the build session decides how many there are.
+     */
+    @Parameter(property = "docfix.threads", defaultValue = "1C")
+    private String threads;
+
+    /**
+     * A directory to write the fixed sources to instead of replacing them, for
+     * example to build a fixed source jar from a read-only checkout. Each file keeps
+     * its path relative to its source root. Files that need no fixes are hard-linked
+     * where possible and otherwise copied byte for byte. Every source is processed,
+     * as if incremental were false. The fix-all goal writes each module to a
+     * subdirectory named after its artifactId.
+     */
+    @Parameter(property = "docfix.outputDirectory")
+    private File outputDirectory;
+
+    /**
+     * A zip or jar archive of sources to fix instead of the source roots, such as the
+     * project's sources jar when the goal is bound to the package phase. Only the
+     * entries that change are compressed again. The since, incremental, and
+     * outputDirectory parameters have no effect on an archive.
+     */
+    @Parameter(property = "docfix.archive")
+    private File archive;
+
+    /**
+     * The file to write the fixed archive to. By default the archive is fixed in place.
+     */
+    @Parameter(property = "docfix.outputArchive")
+    private File outputArchive;
+
+    /**
+     * Whether to write a machine-readable report of what the execution did, such as
+     * the files scanned and changed, the bytes read and written, and the time taken,
+     * so build analytics can track the cost of the goal over time.
+     */
+    @Parameter(property = "docfix.report", defaultValue = "false")
+    private boolean report;
+
+    /**
+     * The JSON file the report is written to, replacing the report of the previous run.
+     */
+    @Parameter(property = "docfix.reportFile",
+            defaultValue = "${project.build.directory}/docfix-report.json")
+    private File reportFile;
+
+    /**
+     * This plugin, whose version is part of the incremental build state.
+     */
+    @Parameter(defaultValue = "${plugin}", readonly = true, required = true)
+    private PluginDescriptor plugin;
+
+    /**
+     * The incremental build context, which tells IDE builds which files changed
+     * and learns which files the goal modified.
+     */
+    @Component
+    private BuildContext buildContext;
+
     @Override
     public void execute() throws MojoExecutionException, MojoFailureException {
-        if (!sourceDirectory.exists()) {
-            getLog().warn("Source directory does not exist: " + sourceDirectory);
+        if ("pom".equals(project.getPackaging())) {
+            getLog().debug("Skipping " + project.getArtifactId() + " because it has pom packaging");
             return;
         }
+        Charset charset = charset();
+        FixStatistics statistics = new FixStatistics();
+        FixOptions options = newOptions(charset)
+                .setCacheFile(cacheFile(project))
+                .setOutputDirectory(outputDirectory(project))
+                .setStatistics(statistics);
+        try {
+            List<Path> roots = archive == null
+                    ? sourceRoots(project, sourceDirectory) : Collections.emptyList();
+            if (archive == null && roots.isEmpty()) {
+                return;
+            }
+            long start = System.nanoTime();
+            try {
+                if (archive != null) {
+                    processArchive(archive.toPath(),
+                            outputArchive == null ? null : outputArchive.toPath(), options);
+                } else {
+                    process(roots, options, charset);
+                }
+            } finally {
+                long nanos = System.nanoTime() - start;
+                getLog().info("DocFix: " + summary(statistics, nanos));
+                writeReport(nanos, Collections.singletonMap(project, statistics));
+            }
+        } catch (IOException e) {
+            throw new MojoExecutionException("Failed to fix Javadoc comments", e);
+        }
+    }
 
-        if (!sourceDirectory.isDirectory()) {
-            getLog().warn("Source directory is not a directory: " + sourceDirectory);
-            return;
+    /**
+     * Returns a one-line summary of what a run did, omitting the time if nanos is negative.
+     */
+    static String summary(FixStatistics statistics, long nanos) {
+        String counts = statistics.getFiles() + " file(s) scanned, "
+                + statistics.getSkipped() + " skipped, "
+                + statistics.getChanged() + " changed, "
+                + statistics.getFailed() + " failed, "
+                + statistics.getBytesRead() + " bytes read, "
+                + statistics.getBytesWritten() + " bytes written";
+        if (nanos < 0) {
+            return counts;
         }
+        return counts + String.format(Locale.ROOT, " in %.2f s (%.1f files/s)",
+                nanos / 1e9, filesPerSecond(statistics, nanos));
+    }
 
+    private static double filesPerSecond(FixStatistics statistics, long nanos) {
+        return nanos == 0 ? 0.0 : statistics.getFiles() * 1e9 / nanos;
+    }
+
+    /**
+     * Writes the JSON report if one was requested. A report that cannot be written
+     * is logged as a warning rather than failing the build.
+     *
+     * @param nanos the wall time of the whole execution
+     * @param modules the statistics of each module the execution processed
+     */
+    void writeReport(long nanos, Map<MavenProject, FixStatistics> modules) {
+        if (!report) {
+            return;
+        }
+        long files = 0;
+        for (FixStatistics statistics : modules.values()) {
+            files += statistics.getFiles();
+        }
+        StringBuilder json = new StringBuilder();
+        json.append("{\n  \"goal\": \"").append(goal()).append("\",\n");
+        json.append("  \"millis\": ").append(nanos / 1_000_000).append(",\n");
+        json.append("  \"files\": ").append(files).append(",\n");
+        json.append(String.format(Locale.ROOT, "  \"filesPerSecond\": %.1f,\n",
+                nanos == 0 ? 0.0 : files * 1e9 / nanos));
+        json.append("  \"modules\": [");
+        String separator = "\n";
+        for (Map.Entry<MavenProject, FixStatistics> entry : modules.entrySet()) {
+            MavenProject module = entry.getKey();
+            FixStatistics statistics = entry.getValue();
+            json.append(separator)
+                    .append("    {\"module\": \"")
+                    .append(escape(module.getGroupId() + ":" + module.getArtifactId()))
+                    .append("\", \"files\": ").append(statistics.getFiles())
+                    .append(", \"skipped\": ").append(statistics.getSkipped())
+                    .append(", \"changed\": ").append(statistics.getChanged())
+                    .append(", \"failed\": ").append(statistics.getFailed())
+                    .append(", \"bytesRead\": ").append(statistics.getBytesRead())
+                    .append(", \"bytesWritten\": ").append(statistics.getBytesWritten())
+                    .append("}");
+            separator = ",\n";
+        }
+        json.append(modules.isEmpty() ? "]\n}\n" : "\n  ]\n}\n");
         try {
-            Charset charset = Charset.forName(encoding);
-            Path basePath = sourceDirectory.toPath();
-            
-            DocFix.fixDirectory(basePath, dryrun, charset);
+            Path file = reportFile.toPath().toAbsolutePath();
+            Files.createDirectories(file.getParent());
+            Files.write(file, json.toString().getBytes(StandardCharsets.UTF_8));
         } catch (IOException e) {
-            throw new MojoExecutionException("Failed to fix Javadoc comments", e);
+            getLog().warn("Could not write the DocFix report " + reportFile + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the name of this goal, as recorded in the report.
+     */
+    String goal() {
+        return "fix";
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    /**
+     * Returns the configured encoding.
+     */
+    Charset charset() throws MojoExecutionException {
+        try {
+            return Charset.forName(encoding);
         } catch (IllegalArgumentException e) {
             throw new MojoExecutionException("Invalid encoding: " + encoding, e);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Returns the configured options that are the same for every module of the build,
+     * sharing the state kept in the build session.
+     */
+    FixOptions newOptions(Charset charset) throws MojoExecutionException {
+        int threadCount;
+        try {
+            threadCount = parseThreads(threads);
+        } catch (NumberFormatException e) {
+            throw new MojoExecutionException("Invalid threads: " + threads, e);
+        }
+        if (since != null && since.startsWith("-")) {
+            throw new MojoExecutionException("Invalid git ref: " + since);
+        }
+        return new FixOptions()
+                .setDryrun(dryrun)
+                .setEncoding(charset)
+                .setSince(since)
+                .setContext(sharedContext(threadCount))
+                .setIncludes(includes == null ? Collections.emptyList() : includes)
+                .setExcludes(excludes == null ? Collections.emptyList() : excludes)
+                .setResultCacheDirectory(
+                        resultCacheDirectory == null ? null : resultCacheDirectory.toPath());
+    }
+
+    /**
+     * Returns the cache file of a module, or null if the cache is disabled. Other
+     * modules than this execution's use a file of the same name in their own build directory.
+     */
+    Path cacheFile(MavenProject module) {
+        if (!cache) {
+            return null;
+        } else if (module == project) {
+            return cacheFile.toPath();
+        }
+        return Paths.get(module.getBuild().getDirectory(), cacheFile.getName());
+    }
+
+    /**
+     * Returns the directory the fixed sources of a module are written to, or null if
+     * they are fixed in place. Other modules than this execution's get a subdirectory
+     * named after their artifactId.
+     */
+    Path outputDirectory(MavenProject module) {
+        if (outputDirectory == null) {
+            return null;
+        } else if (module == project) {
+            return outputDirectory.toPath();
+        }
+        return outputDirectory.toPath().resolve(module.getArtifactId());
+    }
+
+    /**
+     * Fixes the files in the source roots.
+     *
+     * @param roots the distinct, existing source roots
+     * @param options the settings configured for the goal
+     * @param charset the configured encoding
+     * @throws IOException if the sources cannot be processed
+     * @throws MojoFailureException if the sources fail a check
+     */
+    void process(List<Path> roots, FixOptions options, Charset charset)
+            throws IOException, MojoFailureException {
+        // Incremental runs assume the unchanged sources were fixed in place before
+        if (!incremental || since != null || options.getOutputDirectory() != null) {
+            DocFix.fixDirectories(roots, options);
+        } else if (buildContext.isIncremental()) {
+            fixDelta(roots, options);
+        } else {
+            fixStale(roots, options, charset);
+        }
+        if (options.getOutputDirectory() != null) {
+            buildContext.refresh(options.getOutputDirectory().toFile());
+        } else {
+            for (Path root : roots) {
+                buildContext.refresh(root.toFile());
+            }
+        }
+    }
+
+    /**
+     * Fixes the Java files in an archive.
+     *
+     * @param archive the archive to fix
+     * @param output the file to write the fixed archive to, or null to fix it in place
+     * @param options the settings configured for the goal
+     * @throws IOException if the archive cannot be read or written
+     * @throws MojoFailureException if the sources fail a check
+     */
+    void processArchive(Path archive, Path output, FixOptions options)
+            throws IOException, MojoFailureException {
+        if (output != null) {
+            Files.createDirectories(output.toAbsolutePath().getParent());
+        }
+        DocFix.fixArchive(archive, output, options.setOutputDirectory(null).setSince(null));
+        buildContext.refresh((output == null ? archive : output).toFile());
+    }
+
+    /**
+     * Returns the existing source roots of a module to process, without duplicates
+     * or roots nested in other roots.
+     *
+     * @param module the module
+     * @param sourceDirectory the directory to process unless source roots are included
+     */
+    List<Path> sourceRoots(MavenProject module, File sourceDirectory) throws IOException {
+        if (!includeCompileSourceRoots && !includeTestSourceRoots && !includeGeneratedSourceRoots) {
+            if (!sourceDirectory.exists()) {
+                getLog().warn("Source directory does not exist: " + sourceDirectory);
+                return Collections.emptyList();
+            }
+            if (!sourceDirectory.isDirectory()) {
+                getLog().warn("Source directory is not a directory: " + sourceDirectory);
+                return Collections.emptyList();
+            }
+            return Collections.singletonList(sourceDirectory.toPath());
+        }
+
+        Path buildDirectory =
+                Paths.get(module.getBuild().getDirectory()).toAbsolutePath().normalize();
+        List<Path> roots = new ArrayList<>();
+        addRoots(module.getCompileSourceRoots(), includeCompileSourceRoots, buildDirectory, roots);
+        addRoots(module.getTestCompileSourceRoots(), includeTestSourceRoots, buildDirectory, roots);
+        List<Path> distinct = DocFix.distinctRoots(roots);
+        if (distinct.isEmpty()) {
+            getLog().info("No source roots to process in " + module.getArtifactId());
+        }
+        return distinct;
+    }
+
+    /**
+     * Adds the roots of one kind that are included. A root in the build directory
+     * counts as generated.
+     */
+    private void addRoots(List<String> candidates, boolean includeWritten, Path buildDirectory,
+            List<Path> roots) {
+        for (String candidate : candidates) {
+            Path root = Paths.get(candidate).toAbsolutePath().normalize();
+            boolean generated = root.startsWith(buildDirectory);
+            if (generated ? includeGeneratedSourceRoots : includeWritten) {
+                roots.add(root);
+            }
+        }
+    }
+
+    /**
+     * Fixes the sources that the IDE's build context reports as changed.
+     */
+    private void fixDelta(List<Path> roots, FixOptions options) throws IOException {
+        Map<Path, List<Path>> changed = new LinkedHashMap<>();
+        for (Path root : roots) {
+            File directory = root.toFile();
+            if (!buildContext.hasDelta(directory)) {
+                continue;
+            }
+            Scanner scanner = buildContext.newScanner(directory);
+            scanner.setIncludes(new String[] {"**/*.java"});
+            scanner.scan();
+            List<Path> files = new ArrayList<>();
+            for (String name : scanner.getIncludedFiles()) {
+                files.add(root.resolve(name));
+            }
+            changed.put(root, files);
+        }
+        if (changed.isEmpty()) {
+            getLog().debug("No changed sources in " + roots);
+            return;
+        }
+        DocFix.fixFiles(changed, options);
+    }
+
+    /**
+     * Fixes the sources modified since the last run recorded in the state file.
+     */
+    private void fixStale(List<Path> roots, FixOptions options, Charset charset)
+            throws IOException {
+        String configuration = "version=" + plugin.getVersion() + ", encoding=" + charset.name()
+                + ", roots=" + roots + ", includes=" + options.getIncludes()
+                + ", excludes=" + options.getExcludes()
+                + ", editorconfig=" + StaleSources.parentEditorConfigs(roots);
+        SourceFingerprint fingerprint = new SourceFingerprint(fingerprintFile.toPath(), configuration);
+        if (fingerprint.matches()) {
+            getLog().debug("Source directories and files unchanged since the last run; skipping "
+                    + roots);
+            return;
+        }
+        StaleSources staleSources = new StaleSources(stateFile.toPath(), configuration);
+        Map<Path, List<Path>> stale = new LinkedHashMap<>();
+        int count = 0;
+        for (Path root : roots) {
+            List<Path> files = staleSources.scan(root, fingerprint);
+            if (files == null) {
+                stale = null;
+                break;
+            }
+            if (!files.isEmpty()) {
+                stale.put(root, files);
+                count += files.size();
+            }
+        }
+
+        List<Path> written = Collections.emptyList();
+        if (stale == null) {
+            DocFix.fixDirectories(roots, options);
+        } else if (stale.isEmpty()) {
+            getLog().info("Sources unchanged since the last run; skipping " + roots);
+        } else {
+            getLog().info("Fixing " + count + " changed source file(s)");
+            written = DocFix.fixFiles(stale, options);
+        }
+        // A dry run fixes nothing, so the same files are still stale next time,
+        // and a file that failed must be read again even if it does not change
+        if (!dryrun && options.getStatistics().getFailed() == 0) {
+            if (stale == null || !stale.isEmpty()) {
+                staleSources.save();
+            }
+            // A full run skips the scan, so the next run records the fingerprint
+            if (stale == null) {
+                fingerprint.delete();
+            } else {
+                fingerprint.record(written);
+            }
+        }
+    }
+
+    /**
+     * Returns the state shared by every execution of this plugin in the build session,
+     * creating it with the given number of threads on first use. Keying it by class
+     * keeps plugin versions loaded by different class loaders apart.
+     */
+    private FixContext sharedContext(int threadCount) {
+        return (FixContext) session.getRepositorySession().getData()
+                .computeIfAbsent(FixContext.class, () -> new FixContext(threadCount));
+    }
+
+    /**
+     * Parses a thread count such as 4 or 1.5C, where C means per available processor.
+     */
+    private static int parseThreads(String threads) {
+        String value = threads.trim();
+        if (value.endsWith("C") || value.endsWith("c")) {
+            double perProcessor = Double.parseDouble(value.substring(0, value.length() - 1));
+            int processors = Runtime.getRuntime().availableProcessors();
+            return Math.max(1, (int) (perProcessor * processors));
+        }
+        return Math.max(1, Integer.parseInt(value));
+    }
+}
@@ -0,0 +1,79 @@
+package com.elharo.docfix;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maven plugin goal that runs once for the whole reactor and fixes the Javadoc
+ * comments of every module in one pass. The files of all modules are fed to one
+ * pool of worker threads, so small modules do not leave threads idle while a
+ * large one is still being fixed. Each module keeps its own cache file, and the
+ * results are logged per module. Takes the same parameters as the fix goal,
+ * except that incremental has no effect.
+ */
+@Mojo(name = "fix-all", aggregator = true, threadSafe = true)
+public class FixAllMojo extends DocFixMojo {
+
+    /**
+     * The modules of the build.
+     */
+    @Parameter(defaultValue = "${reactorProjects}", readonly = true, required = true)
+    private List<MavenProject> reactorProjects;
+
+    @Override
+    String goal() {
+        return "fix-all";
+    }
+
+    @Override
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        Charset charset = charset();
+        List<MavenProject> modules = new ArrayList<>();
+        List<FixJob> jobs = new ArrayList<>();
+        long start = System.nanoTime();
+        try {
+            for (MavenProject module : reactorProjects) {
+                if ("pom".equals(module.getPackaging())) {
+                    continue;
+                }
+                File sourceDirectory = new File(module.getBuild().getSourceDirectory());
+                List<Path> roots = sourceRoots(module, sourceDirectory);
+                if (roots.isEmpty()) {
+                    continue;
+                }
+                FixOptions options = newOptions(charset)
+                        .setCacheFile(cacheFile(module))
+                        .setOutputDirectory(outputDirectory(module));
+                modules.add(module);
+                jobs.add(new FixJob(roots, options));
+            }
+            DocFix.fixAll(jobs);
+        } catch (IOException e) {
+            throw new MojoExecutionException("Failed to fix Javadoc comments", e);
+        }
+        long nanos = System.nanoTime() - start;
+
+        Map<MavenProject, FixStatistics> statistics = new LinkedHashMap<>();
+        FixStatistics total = new FixStatistics();
+        for (int i = 0; i < jobs.size(); i++) {
+            FixStatistics module = jobs.get(i).getStatistics();
+            getLog().info(modules.get(i).getArtifactId() + ": " + summary(module, -1));
+            statistics.put(modules.get(i), module);
+            total.add(module);
+        }
+        getLog().info("Reactor: " + jobs.size() + " module(s), " + summary(total, nanos));
+        writeReport(nanos, statistics);
+    }
+}
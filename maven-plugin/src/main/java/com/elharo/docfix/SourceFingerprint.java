@@ -0,0 +1,166 @@
+package com.elharo.docfix;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Records the metadata of a module's source directories and of the files in them
+ * that affect the fixed output, so the next build can tell that nothing changed
+ * without listing a single directory.
+ *
+ * <p>Adding, removing, or renaming an entry changes the modification time of its
+ * directory, so new files and subdirectories show up when the recorded directories
+ * are checked, and edits in place show up in the recorded sizes and modification
+ * times of the files. A check costs one stat per recorded entry. A module without
+ * Java sources records only its directories.
+ *
+ * <p>The entries are not walked for their own sake: {@link StaleSources} adds
+ * them while it looks for stale sources, so recording costs nothing more than
+ * the scan.
+ *
+ * <p>The .editorconfig files in the directories above the roots also apply to the
+ * sources but are never recorded, so the configuration must describe them, as
+ * {@link StaleSources#parentEditorConfigs(Collection)} does.
+ *
+ * <p>Entries modified within two seconds of the scan are too recent to trust,
+ * since a later edit could leave the same timestamp, so no fingerprint is kept
+ * until a later run finds them settled. Files this run just wrote are the
+ * exception: they are read again after the run and recorded as written.
+ */
+final class SourceFingerprint {
+
+    private static final long SLACK_MILLIS = 2000;
+    private static final String DIRECTORY = "D";
+    private static final String FILE = "F";
+
+    private final Path fingerprintFile;
+    private final String configuration;
+    private final long threshold = System.currentTimeMillis() - SLACK_MILLIS;
+    private final Map<Path, String> entries = new LinkedHashMap<>();
+    private final Set<Path> racy = new HashSet<>();
+
+    /**
+     * Creates a fingerprint backed by the given file.
+     *
+     * @param fingerprintFile the file recording the previous run
+     * @param configuration the settings of this run that affect the fixed output
+     */
+    SourceFingerprint(Path fingerprintFile, String configuration) {
+        this.fingerprintFile = fingerprintFile;
+        this.configuration = configuration;
+    }
+
+    /**
+     * Checks whether every recorded directory and file is exactly as the previous
+     * run with the same configuration left it.
+     *
+     * @return true if nothing could have changed, false if the sources must be scanned
+     */
+    boolean matches() {
+        if (!Files.isRegularFile(fingerprintFile)) {
+            return false;
+        }
+        try (BufferedReader in = Files.newBufferedReader(fingerprintFile, StandardCharsets.UTF_8)) {
+            if (!configuration.equals(in.readLine())) {
+                return false;
+            }
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] fields = line.split("\t", 4);
+                if (fields.length != 4) {
+                    return false;
+                }
+                BasicFileAttributes attributes =
+                        Files.readAttributes(Paths.get(fields[3]), BasicFileAttributes.class);
+                boolean directory = fields[0].equals(DIRECTORY);
+                if (directory != attributes.isDirectory()
+                        || Long.parseLong(fields[1]) != attributes.lastModifiedTime().toMillis()
+                        || (!directory && Long.parseLong(fields[2]) != attributes.size())) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (IOException | NumberFormatException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Adds a directory, or a file that affects the fixed output, found while
+     * scanning the source roots.
+     *
+     * @param path the directory or file
+     * @param attributes its attributes, read during the scan
+     */
+    void add(Path path, BasicFileAttributes attributes) {
+        long modified = attributes.lastModifiedTime().toMillis();
+        entries.put(path.toAbsolutePath(), entry(attributes));
+        if (modified >= threshold) {
+            racy.add(path.toAbsolutePath());
+        }
+    }
+
+    /**
+     * Records the entries added by a complete scan of the source roots, or deletes
+     * the previous record if an entry is too recent to trust.
+     *
+     * @param written the files this run changed, whose metadata is read again
+     * @throws IOException if the record cannot be written
+     */
+    void record(Collection<Path> written) throws IOException {
+        for (Path file : written) {
+            Path path = file.toAbsolutePath();
+            if (entries.containsKey(path)) {
+                entries.put(path, entry(Files.readAttributes(path, BasicFileAttributes.class)));
+                racy.remove(path);
+            }
+        }
+        if (!racy.isEmpty()) {
+            delete();
+            return;
+        }
+
+        StringBuilder record = new StringBuilder(configuration).append('\n');
+        for (Map.Entry<Path, String> entry : entries.entrySet()) {
+            record.append(entry.getValue()).append('\t').append(entry.getKey()).append('\n');
+        }
+        Path parent = fingerprintFile.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temp = Files.createTempFile(parent, fingerprintFile.getFileName().toString(), ".tmp");
+        try {
+            try (BufferedWriter out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                out.write(record.toString());
+            }
+            Files.move(temp, fingerprintFile, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Deletes the previous record, as when the scan was cut short.
+     *
+     * @throws IOException if the record cannot be deleted
+     */
+    void delete() throws IOException {
+        Files.deleteIfExists(fingerprintFile);
+    }
+
+    private static String entry(BasicFileAttributes attributes) {
+        return (attributes.isDirectory() ? DIRECTORY : FILE) + "\t"
+                + attributes.lastModifiedTime().toMillis() + "\t" + attributes.size();
+    }
+}
@@ -0,0 +1,190 @@
+package com.elharo.docfix;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers when the fix goal last ran over a module's sources so that the
+ * next build processes only the sources added or modified since then.
+ *
+ * <p>A source is stale if its modification time, or that of its directory, is
+ * not older than the start of the previous run. Checking the directory catches
+ * files moved or copied in with their old timestamps. Two seconds of slack
+ * cover file systems with coarse timestamps.
+ *
+ * <p>The walk sees only the .editorconfig files inside the source roots, so the
+ * ones in the directories above them, such as the usual one at the top of the
+ * repository, belong in the configuration; see {@link #parentEditorConfigs(Collection)}.
+ */
+final class StaleSources {
+
+    private static final long SLACK_MILLIS = 2000;
+
+    private final Path stateFile;
+    private final String configuration;
+    private final long started = System.currentTimeMillis();
+
+    /**
+     * Creates a scanner backed by the given state file.
+     *
+     * @param stateFile the file recording the previous run
+     * @param configuration the settings of this run that affect the fixed output
+     */
+    StaleSources(Path stateFile, String configuration) {
+        this.stateFile = stateFile;
+        this.configuration = configuration;
+    }
+
+    /**
+     * Finds the Java sources that changed since the previous run.
+     *
+     * @param sourceDirectory the source root
+     * @param fingerprint the fingerprint to add every directory and relevant file to,
+     *     which is complete only if every root was scanned to the end
+     * @return the stale sources, or null if every source must be processed because
+     *     there is no usable record of a previous run with the same configuration
+     *     or an .editorconfig file changed
+     * @throws IOException if the source directory cannot be walked
+     */
+    List<Path> scan(Path sourceDirectory, SourceFingerprint fingerprint) throws IOException {
+        long previous = previousStart();
+        if (previous < 0) {
+            return null;
+        }
+        long threshold = previous - SLACK_MILLIS;
+
+        List<Path> stale = new ArrayList<>();
+        Set<Path> changedDirectories = new HashSet<>();
+        boolean[] configChanged = new boolean[1];
+        Files.walkFileTree(sourceDirectory, EnumSet.noneOf(FileVisitOption.class), 63,
+                new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) {
+                        fingerprint.add(dir, attributes);
+                        if (attributes.lastModifiedTime().toMillis() >= threshold) {
+                            changedDirectories.add(dir);
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                        if (!attributes.isRegularFile()) {
+                            return FileVisitResult.CONTINUE;
+                        }
+                        boolean changed = attributes.lastModifiedTime().toMillis() >= threshold
+                                || changedDirectories.contains(file.getParent());
+                        String name = file.getFileName().toString();
+                        if (name.endsWith(".java") || name.equals(".editorconfig")) {
+                            fingerprint.add(file, attributes);
+                        }
+                        if (name.equals(".editorconfig") && changed) {
+                            configChanged[0] = true;
+                            return FileVisitResult.TERMINATE;
+                        }
+                        if (name.endsWith(".java") && changed) {
+                            stale.add(file);
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+        return configChanged[0] ? null : stale;
+    }
+
+    /**
+     * Describes the .editorconfig files in the directories above the source roots,
+     * by path, size, and modification time, so that a configuration including the
+     * description changes whenever one of them is created, edited, or deleted.
+     *
+     * @param roots the source roots
+     * @return the description, which is empty if there are no such files
+     */
+    static String parentEditorConfigs(Collection<Path> roots) {
+        Set<Path> directories = new LinkedHashSet<>();
+        for (Path root : roots) {
+            for (Path dir = root.toAbsolutePath().getParent(); dir != null; dir = dir.getParent()) {
+                directories.add(dir);
+            }
+        }
+        StringBuilder description = new StringBuilder();
+        for (Path dir : directories) {
+            Path file = dir.resolve(".editorconfig");
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                if (description.length() > 0) {
+                    description.append(' ');
+                }
+                description.append(file).append('=').append(attributes.size()).append('@')
+                        .append(attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS));
+            } catch (IOException ex) {
+                // no .editorconfig file in this directory
+            }
+        }
+        return description.toString();
+    }
+
+    /**
+     * Returns the start time of the previous run with the same configuration,
+     * or -1 if there was none.
+     */
+    private long previousStart() {
+        if (!Files.isRegularFile(stateFile)) {
+            return -1;
+        }
+        Properties state = new Properties();
+        try (InputStream in = Files.newInputStream(stateFile)) {
+            state.load(in);
+        } catch (IOException ex) {
+            return -1;
+        }
+        if (!configuration.equals(state.getProperty("configuration"))) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(state.getProperty("started", "-1"));
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    /**
+     * Records that this run finished, so the next run only looks at
+     * sources modified since this one started.
+     *
+     * @throws IOException if the state file cannot be written
+     */
+    void save() throws IOException {
+        Properties state = new Properties();
+        state.setProperty("configuration", configuration);
+        state.setProperty("started", Long.toString(started));
+        Path parent = stateFile.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temp = Files.createTempFile(parent, stateFile.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                state.store(out, "DocFix incremental build state");
+            }
+            Files.move(temp, stateFile, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.elharo.docfix;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SourceFingerprintTest {
+
+    private static final FileTime OLD = FileTime.fromMillis(1_000_000_000_000L);
+    private static final List<Path> NOTHING_WRITTEN = Collections.emptyList();
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Path root;
+    private Path source;
+    private Path fingerprintFile;
+    private Path stateFile;
+    private List<Path> roots;
+
+    @Before
+    public void setUp() throws IOException {
+        root = temporaryFolder.newFolder("src").toPath();
+        Path directory = Files.createDirectories(root.resolve("com/example"));
+        source = directory.resolve("Test.java");
+        Files.writeString(source, "/** Test. */\nclass Test {}\n", StandardCharsets.UTF_8);
+        age(source, directory, directory.getParent(), root);
+        fingerprintFile = temporaryFolder.getRoot().toPath().resolve("docfix.fingerprint");
+        stateFile = temporaryFolder.getRoot().toPath().resolve("docfix.state");
+        roots = Collections.singletonList(root);
+    }
+
+    @Test
+    public void testUnchangedSourcesMatch() throws IOException {
+        assertFalse(new SourceFingerprint(fingerprintFile, "config").matches());
+
+        scanned("config").record(NOTHING_WRITTEN);
+
+        assertTrue(new SourceFingerprint(fingerprintFile, "config").matches());
+    }
+
+    @Test
+    public void testEditInPlaceDoesNotMatch() throws IOException {
+        scanned("config").record(NOTHING_WRITTEN);
+
+        // Writing in place leaves the modification time of the directory alone
+        Files.writeString(source, "/** test */\nclass Test {}\n", StandardCharsets.UTF_8);
+        age(source.getParent());
+
+        assertFalse(new SourceFingerprint(fingerprintFile, "config").matches());
+    }
+
+    @Test
+    public void testNewFileDoesNotMatch() throws IOException {
+        scanned("config").record(NOTHING_WRITTEN);
+
+        Files.writeString(source.resolveSibling("New.java"), "class New {}\n",
+                StandardCharsets.UTF_8);
+        age(source.resolveSibling("New.java"));
+
+        assertFalse(new SourceFingerprint(fingerprintFile, "config").matches());
+    }
+
+    @Test
+    public void testDeletedFileDoesNotMatch() throws IOException {
+        scanned("config").record(NOTHING_WRITTEN);
+
+        Files.delete(source);
+        age(source.getParent());
+
+        assertFalse(new SourceFingerprint(fingerprintFile, "config").matches());
+    }
+
+    @Test
+    public void testRecentTimestampsAreNotRecorded() throws IOException {
+        scanned("config").record(NOTHING_WRITTEN);
+        assertTrue(new SourceFingerprint(fingerprintFile, "config").matches());
+
+        // A file modified just now could change again without a new timestamp
+        Files.setLastModifiedTime(source, FileTime.fromMillis(System.currentTimeMillis()));
+        scanned("config").record(NOTHING_WRITTEN);
+
+        assertFalse(Files.exists(fingerprintFile));
+        assertFalse(new SourceFingerprint(fingerprintFile, "config").matches());
+    }
+
+    @Test
+    public void testFilesWrittenByTheRunAreRecorded() throws IOException {
+        Files.setLastModifiedTime(source, FileTime.fromMillis(System.currentTimeMillis()));
+        SourceFingerprint fingerprint = scanned("config");
+
+        // As the run would, rewrite the file after the scan
+        Files.writeString(source, "/** Test. */\nclass Test { }\n", StandardCharsets.UTF_8);
+        fingerprint.record(Collections.singletonList(source));
+
+        assertTrue(new SourceFingerprint(fingerprintFile, "config").matches());
+        Files.writeString(source, "/** Test. */\nclass Test {  }\n", StandardCharsets.UTF_8);
+        assertFalse(new SourceFingerprint(fingerprintFile, "config").matches());
+    }
+
+    @Test
+    public void testChangedConfigurationDoesNotMatch() throws IOException {
+        scanned("encoding=UTF-8").record(NOTHING_WRITTEN);
+
+        assertFalse(new SourceFingerprint(fingerprintFile, "encoding=ISO-8859-1").matches());
+    }
+
+    @Test
+    public void testEditedParentEditorConfigDoesNotMatch() throws IOException {
+        Path editorConfig = temporaryFolder.getRoot().toPath().resolve(".editorconfig");
+        Files.writeString(editorConfig, "root = true\n[*]\ncharset = utf-8\n",
+                StandardCharsets.UTF_8);
+        age(editorConfig);
+        scanned(configuration()).record(NOTHING_WRITTEN);
+        assertTrue(new SourceFingerprint(fingerprintFile, configuration()).matches());
+
+        Files.writeString(editorConfig, "root = true\n[*]\ncharset = latin1\n",
+                StandardCharsets.UTF_8);
+
+        assertFalse(new SourceFingerprint(fingerprintFile, configuration()).matches());
+    }
+
+    /**
+     * Returns a fingerprint filled in by a complete scan for stale sources.
+     */
+    private SourceFingerprint scanned(String configuration) throws IOException {
+        new StaleSources(stateFile, configuration).save();
+        SourceFingerprint fingerprint = new SourceFingerprint(fingerprintFile, configuration);
+        assertNotNull(new StaleSources(stateFile, configuration).scan(root, fingerprint));
+        return fingerprint;
+    }
+
+    private String configuration() {
+        return "encoding=UTF-8, editorconfig=" + StaleSources.parentEditorConfigs(roots);
+    }
+
+    private static void age(Path... paths) throws IOException {
+        for (Path path : paths) {
+            Files.setLastModifiedTime(path, OLD);
+        }
+    }
+}
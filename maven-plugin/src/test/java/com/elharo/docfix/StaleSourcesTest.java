@@ -0,0 +1,92 @@
+package com.elharo.docfix;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class StaleSourcesTest {
+
+    private static final FileTime OLD = FileTime.fromMillis(1_000_000_000_000L);
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Path project;
+    private Path root;
+    private Path stateFile;
+
+    @Before
+    public void setUp() throws IOException {
+        project = temporaryFolder.newFolder("project").toPath();
+        root = Files.createDirectories(project.resolve("src/main/java"));
+        Path source = root.resolve("Test.java");
+        Files.writeString(source, "/** Test. */\nclass Test {}\n", StandardCharsets.UTF_8);
+        Files.setLastModifiedTime(source, OLD);
+        Files.setLastModifiedTime(root, OLD);
+        stateFile = project.resolve("target/docfix.state");
+    }
+
+    @Test
+    public void testUnchangedSourcesAreNotStale() throws IOException {
+        StaleSources first = new StaleSources(stateFile, configuration());
+        assertNull(first.scan(root, fingerprint()));
+        first.save();
+
+        List<Path> stale = new StaleSources(stateFile, configuration()).scan(root, fingerprint());
+        assertTrue(stale.isEmpty());
+    }
+
+    @Test
+    public void testEditedParentEditorConfigMakesEverythingStale() throws IOException {
+        Path editorConfig = project.resolve(".editorconfig");
+        Files.writeString(editorConfig, "root = true\n[*]\nindent_style = space\n",
+                StandardCharsets.UTF_8);
+        Files.setLastModifiedTime(editorConfig, OLD);
+        String before = configuration();
+        StaleSources first = new StaleSources(stateFile, before);
+        first.scan(root, fingerprint());
+        first.save();
+
+        Files.writeString(editorConfig, "root = true\n[*]\nindent_style = tab\n",
+                StandardCharsets.UTF_8);
+        String after = configuration();
+
+        assertNotEquals(before, after);
+        assertNull(new StaleSources(stateFile, after).scan(root, fingerprint()));
+    }
+
+    @Test
+    public void testParentEditorConfigs() throws IOException {
+        assertEquals("", StaleSources.parentEditorConfigs(Collections.singletonList(root)));
+
+        Path editorConfig = project.resolve(".editorconfig");
+        Files.writeString(editorConfig, "root = true\n", StandardCharsets.UTF_8);
+        Files.setLastModifiedTime(editorConfig, OLD);
+
+        assertEquals(editorConfig + "=12@" + OLD.to(TimeUnit.NANOSECONDS),
+                StaleSources.parentEditorConfigs(Collections.singletonList(root)));
+    }
+
+    private SourceFingerprint fingerprint() {
+        return new SourceFingerprint(project.resolve("target/docfix.fingerprint"), configuration());
+    }
+
+    private String configuration() {
+        return "encoding=UTF-8, editorconfig="
+                + StaleSources.parentEditorConfigs(Collections.singletonList(root));
+    }
+}